@@ -0,0 +1,271 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.cache;
+
+import com.github.kpgtb.ktools.manager.debug.DebugManager;
+import org.bukkit.Material;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks of CacheManager hot path (get, set and getDataOr) for every cache source and storage.
+ * Players and entities are JDK proxies and items are ItemStack with copied meta (like on server), all with {@link MemoryPersistentDataContainer}.
+ * Metadata results include cost of this container and of copying meta, which is lower than on real server,
+ * so they can be compared between versions of CacheManager, but not directly with file storage.
+ * Run: mvn -P benchmark test-compile exec:exec -Dbenchmark=CacheManagerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheManagerBenchmark {
+    private static final String PLUGIN = "benchmark";
+    private static final String KEY = "value";
+    private static final String MISSING_KEY = "missing";
+
+    /**
+     * Storage of player and entity cache
+     */
+    @Param({"file", "metadata"})
+    public String storage;
+
+    /**
+     * Storage of server cache
+     */
+    @Param({"yaml", "log", "mmap"})
+    public String serverStorage;
+
+    private File dataFolder;
+    private CacheManager cacheManager;
+    private CacheKey<Integer> key;
+    private CacheKey<Integer> missingKey;
+
+    private Player player;
+    private Entity entity;
+    private ItemStack itemStack;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dataFolder = Files.createTempDirectory("ktools-benchmark").toFile();
+
+        FileConfiguration config = new YamlConfiguration();
+        config.set("cache.player", storage);
+        config.set("cache.entity", storage);
+        config.set("cache.serverStorage", serverStorage);
+        config.set("debug.enable", false);
+
+        cacheManager = new CacheManager(config, dataFolder, new DebugManager(config, Logger.getLogger("KToolsBenchmark")));
+        cacheManager.setupCacheFile();
+
+        key = cacheManager.getKey(PLUGIN, KEY, Integer.class);
+        missingKey = cacheManager.getKey(PLUGIN, MISSING_KEY, Integer.class);
+
+        player = fakeEntity(Player.class);
+        entity = fakeEntity(Entity.class);
+        itemStack = new FakeItemStack(Material.STONE);
+
+        cacheManager.loadPlayer(player.getUniqueId());
+        for(Object target : new Object[]{null, player, entity, itemStack}) {
+            cacheManager.setData(target, key, 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        cacheManager.close();
+        try (Stream<File> files = Files.walk(dataFolder.toPath()).sorted(Comparator.reverseOrder()).map(Path::toFile)) {
+            files.forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public Integer getServer() {
+        return cacheManager.getServerData(key);
+    }
+
+    @Benchmark
+    public Integer getServerString() {
+        return cacheManager.getServerData(PLUGIN, KEY, Integer.class);
+    }
+
+    @Benchmark
+    public Integer getDataOrServer() {
+        return cacheManager.getServerDataOr(missingKey, 0);
+    }
+
+    @Benchmark
+    public void setServer() {
+        cacheManager.setServerData(key, counter++);
+    }
+
+    @Benchmark
+    public void setAndSaveServer() {
+        cacheManager.setServerData(key, counter++);
+        cacheManager.save();
+    }
+
+    @Benchmark
+    public Integer getPlayer() {
+        return cacheManager.getData(player, key);
+    }
+
+    @Benchmark
+    public Integer getPlayerString() {
+        return cacheManager.getData(player, PLUGIN, KEY, Integer.class);
+    }
+
+    @Benchmark
+    public Integer getDataOrPlayer() {
+        return cacheManager.getDataOr(player, missingKey, 0);
+    }
+
+    @Benchmark
+    public void setPlayer() {
+        cacheManager.setData(player, key, counter++);
+    }
+
+    @Benchmark
+    public Integer getEntity() {
+        return cacheManager.getData(entity, key);
+    }
+
+    @Benchmark
+    public Integer getDataOrEntity() {
+        return cacheManager.getDataOr(entity, missingKey, 0);
+    }
+
+    @Benchmark
+    public void setEntity() {
+        cacheManager.setData(entity, key, counter++);
+    }
+
+    @Benchmark
+    public Integer getItemStack() {
+        return cacheManager.getData(itemStack, key);
+    }
+
+    @Benchmark
+    public Integer getDataOrItemStack() {
+        return cacheManager.getDataOr(itemStack, missingKey, 0);
+    }
+
+    @Benchmark
+    public void setItemStack() {
+        cacheManager.setData(itemStack, key, counter++);
+    }
+
+    private static <T extends Entity> T fakeEntity(Class<T> type) {
+        UUID uuid = UUID.randomUUID();
+        PersistentDataContainer container = new MemoryPersistentDataContainer();
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getUniqueId":
+                    return uuid;
+                case "isValid":
+                    return true;
+                case "getPersistentDataContainer":
+                    return container;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName() + "{" + uuid + "}";
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }));
+    }
+
+    private static ItemMeta fakeItemMeta(MemoryPersistentDataContainer container) {
+        return (ItemMeta) Proxy.newProxyInstance(ItemMeta.class.getClassLoader(), new Class<?>[]{ItemMeta.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getPersistentDataContainer":
+                    return container;
+                case "clone":
+                    return fakeItemMeta(container.copy());
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "ItemMeta";
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * ItemStack with meta kept in field. Like ItemStack of server, it returns copy of meta and saves copy of given meta
+     */
+    private static class FakeItemStack extends ItemStack {
+        private ItemMeta meta = fakeItemMeta(new MemoryPersistentDataContainer());
+
+        private FakeItemStack(Material type) {
+            super(type);
+        }
+
+        @Override
+        public ItemMeta getItemMeta() {
+            return meta.clone();
+        }
+
+        @Override
+        public boolean setItemMeta(ItemMeta itemMeta) {
+            this.meta = itemMeta.clone();
+            return true;
+        }
+
+        @Override
+        public boolean hasItemMeta() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.cache;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.persistence.PersistentDataAdapterContext;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * PersistentDataContainer that keeps values in HashMap. Like container of server, it saves primitive values
+ * and converts them with PersistentDataType on every read and write
+ */
+public class MemoryPersistentDataContainer implements PersistentDataContainer, PersistentDataAdapterContext {
+    private final Map<NamespacedKey, Object> values;
+
+    public MemoryPersistentDataContainer() {
+        this.values = new HashMap<>();
+    }
+
+    private MemoryPersistentDataContainer(Map<NamespacedKey, Object> values) {
+        this.values = new HashMap<>(values);
+    }
+
+    @Override
+    public <T, Z> void set(NamespacedKey key, PersistentDataType<T, Z> type, Z value) {
+        values.put(key, type.toPrimitive(value, this));
+    }
+
+    @Override
+    public <T, Z> boolean has(NamespacedKey key, PersistentDataType<T, Z> type) {
+        return type.getPrimitiveType().isInstance(values.get(key));
+    }
+
+    @Override
+    public <T, Z> Z get(NamespacedKey key, PersistentDataType<T, Z> type) {
+        Object value = values.get(key);
+        if(value == null) {
+            return null;
+        }
+        if(!type.getPrimitiveType().isInstance(value)) {
+            throw new IllegalArgumentException("Value of " + key + " isn't " + type.getPrimitiveType().getSimpleName());
+        }
+        return type.fromPrimitive(type.getPrimitiveType().cast(value), this);
+    }
+
+    @Override
+    public <T, Z> Z getOrDefault(NamespacedKey key, PersistentDataType<T, Z> type, Z defaultValue) {
+        Z value = get(key, type);
+        return value != null ? value : defaultValue;
+    }
+
+    @Override
+    public Set<NamespacedKey> getKeys() {
+        return new HashSet<>(values.keySet());
+    }
+
+    @Override
+    public void remove(NamespacedKey key) {
+        values.remove(key);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    @Override
+    public PersistentDataAdapterContext getAdapterContext() {
+        return this;
+    }
+
+    @Override
+    public PersistentDataContainer newPersistentDataContainer() {
+        return new MemoryPersistentDataContainer();
+    }
+
+    /**
+     * Get copy of this container, like server does when ItemMeta is cloned
+     * @return Copy of container
+     */
+    public MemoryPersistentDataContainer copy() {
+        return new MemoryPersistentDataContainer(values);
+    }
+}
@@ -112,6 +112,7 @@ public final class KTools extends JavaPlugin {
             debug.sendInfo(DebugType.START, "Loading cache...");
             cacheManager = new CacheManager(getConfig(), getDataFolder(), debug);
             cacheManager.setupCacheFile();
+            cacheManager.startSaveTask(this);
             debug.sendInfo(DebugType.START, "Loaded cache.");
         }
 
@@ -311,6 +312,9 @@ public final class KTools extends JavaPlugin {
             this.resourcePackServer.stop();
         }
         this.toolsObjectWrapper.getDataManager().close();
+        if(this.toolsObjectWrapper.getCacheManager() != null) {
+            this.toolsObjectWrapper.getCacheManager().close();
+        }
     }
 
     public GlobalManagersWrapper getGlobalManagersWrapper() {
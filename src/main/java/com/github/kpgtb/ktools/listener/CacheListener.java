@@ -0,0 +1,150 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.listener;
+
+import com.github.kpgtb.ktools.manager.cache.CacheManager;
+import com.github.kpgtb.ktools.manager.listener.KListener;
+import com.github.kpgtb.ktools.util.wrapper.ToolsObjectWrapper;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * CacheListener loads and unloads cache shards and metadata mirrors of players and entities.
+ * Entities removed without any of these events are unloaded by {@link CacheManager#unloadIdle()}
+ */
+public class CacheListener extends KListener {
+    private final CacheManager cacheManager;
+
+    /**
+     * Constructor of listener.
+     *
+     * @param wrapper ToolsObjectWrapper or object that extends it.
+     */
+    public CacheListener(ToolsObjectWrapper wrapper) {
+        super(wrapper);
+        this.cacheManager = wrapper.getCacheManager();
+        if(cacheManager != null) {
+            registerEntitiesUnload(wrapper.getPlugin());
+        }
+    }
+
+    /**
+     * Since 1.17 entities are unloaded separately, and ChunkUnloadEvent doesn't contain them.
+     * EntitiesUnloadEvent doesn't exist in older API, so it's registered with reflection
+     * @param plugin Plugin that owns the listener
+     */
+    @SuppressWarnings("unchecked")
+    private void registerEntitiesUnload(Plugin plugin) {
+        Class<? extends Event> eventClass;
+        Method getEntities;
+        try {
+            eventClass = (Class<? extends Event>) Class.forName("org.bukkit.event.world.EntitiesUnloadEvent");
+            getEntities = eventClass.getMethod("getEntities");
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return;
+        }
+
+        Bukkit.getPluginManager().registerEvent(eventClass, this, EventPriority.MONITOR, (listener, event) -> {
+            if(!eventClass.isInstance(event)) {
+                return;
+            }
+            try {
+                unloadEntities((List<Entity>) getEntities.invoke(event));
+            } catch (ReflectiveOperationException e) {
+                throw new EventException(e);
+            }
+        }, plugin);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if(cacheManager == null) {
+            return;
+        }
+        if(event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+        cacheManager.loadPlayer(event.getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLogin(PlayerLoginEvent event) {
+        if(cacheManager == null) {
+            return;
+        }
+        if(event.getResult() == PlayerLoginEvent.Result.ALLOWED) {
+            return;
+        }
+        cacheManager.unloadPlayer(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        if(cacheManager == null) {
+            return;
+        }
+        cacheManager.unloadPlayer(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        if(cacheManager == null) {
+            return;
+        }
+        // Empty since 1.17, then EntitiesUnloadEvent is used
+        for(Entity entity : event.getChunk().getEntities()) {
+            if(entity instanceof Player) {
+                continue;
+            }
+            cacheManager.unloadEntity(entity.getUniqueId());
+        }
+    }
+
+    private void unloadEntities(List<Entity> entities) {
+        for(Entity entity : entities) {
+            if(entity instanceof Player) {
+                continue;
+            }
+            cacheManager.unloadEntity(entity.getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityDeath(EntityDeathEvent event) {
+        if(cacheManager == null) {
+            return;
+        }
+        if(event.getEntity() instanceof Player) {
+            return;
+        }
+        cacheManager.unloadEntity(event.getEntity().getUniqueId());
+    }
+}
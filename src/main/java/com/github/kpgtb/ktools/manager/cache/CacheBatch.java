@@ -0,0 +1,158 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.cache;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Group of cache changes that are applied together in {@link #commit()}.
+ * Files are saved once after all changes and every item stack gets new meta once.
+ * Batch isn't thread-safe, so use it in one thread
+ * @since 2.4.9
+ */
+public class CacheBatch {
+    private final CacheManager cacheManager;
+    private final List<Change> changes;
+    private boolean committed;
+
+    /**
+     * Constructor of batch. Use {@link CacheManager#batch()}
+     * @param cacheManager Instance of CacheManager
+     */
+    CacheBatch(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+        this.changes = new ArrayList<>();
+        this.committed = false;
+    }
+
+    /**
+     * Add saving data to batch
+     * @param target Object where you want to save data (or null if cacheSource is SERVER)
+     * @param key Key of data
+     * @param data Object with data
+     * @return This batch
+     */
+    public <T> CacheBatch set(@Nullable Object target, CacheKey<T> key, T data) {
+        if(data == null) {
+            throw new IllegalArgumentException("Data can't be null! Use remove()");
+        }
+        return add(target, key, data);
+    }
+
+    /**
+     * Add saving data to batch
+     * @param target Object where you want to save data (or null if cacheSource is SERVER)
+     * @param pluginName Name of plugin that save this data
+     * @param key Key of data
+     * @param data Object with data
+     * @return This batch
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CacheBatch set(@Nullable Object target, String pluginName, String key, T data) {
+        return set(target, cacheManager.getKey(pluginName, key, (Class<T>) data.getClass()), data);
+    }
+
+    /**
+     * Add removing data to batch
+     * @param target Object where you want to remove data (or null if cacheSource is SERVER)
+     * @param key Key of data
+     * @return This batch
+     */
+    public CacheBatch remove(@Nullable Object target, CacheKey<?> key) {
+        return add(target, key, null);
+    }
+
+    /**
+     * Add removing data to batch
+     * @param target Object where you want to remove data (or null if cacheSource is SERVER)
+     * @param pluginName Name of plugin that save this data
+     * @param key Key of data
+     * @return This batch
+     */
+    public CacheBatch remove(@Nullable Object target, String pluginName, String key) {
+        return remove(target, cacheManager.getAnyKey(pluginName, key));
+    }
+
+    @SuppressWarnings("unchecked")
+    private CacheBatch add(@Nullable Object target, CacheKey<?> key, @Nullable Object data) {
+        if(committed) {
+            throw new IllegalStateException("Batch is already committed!");
+        }
+        changes.add(new Change(target, (CacheKey<Object>) key, data));
+        return this;
+    }
+
+    /**
+     * Apply all changes in order that they were added
+     */
+    public void commit() {
+        if(committed) {
+            throw new IllegalStateException("Batch is already committed!");
+        }
+        committed = true;
+
+        boolean dirty = false;
+        Map<ItemStack, ItemMeta> metas = new IdentityHashMap<>();
+
+        for(Change change : changes) {
+            if(change.target instanceof ItemStack && !((ItemStack) change.target).getType().equals(Material.AIR)) {
+                ItemMeta meta = metas.computeIfAbsent((ItemStack) change.target, ItemStack::getItemMeta);
+                PersistentDataContainer container = meta.getPersistentDataContainer();
+                if(change.data == null) {
+                    container.remove(change.key.getNamespacedKey());
+                } else {
+                    container.set(change.key.getNamespacedKey(), change.key.getPdcType(), change.data);
+                }
+                continue;
+            }
+
+            if(change.data == null) {
+                dirty |= cacheManager.deleteData(change.target, change.key);
+            } else {
+                dirty |= cacheManager.putData(change.target, change.key, change.data);
+            }
+        }
+
+        metas.forEach(ItemStack::setItemMeta);
+        changes.clear();
+
+        if(dirty) {
+            cacheManager.markDirty();
+        }
+    }
+
+    private static class Change {
+        private final Object target;
+        private final CacheKey<Object> key;
+        private final Object data;
+
+        private Change(Object target, CacheKey<Object> key, Object data) {
+            this.target = target;
+            this.key = key;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.cache;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.persistence.PersistentDataType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reusable key of cache data. Get it once from {@link CacheManager#getKey(String, String, Class)} and use it in every get/set,
+ * so type of data, NamespacedKey and file path aren't created again on every call
+ * @since 2.4.9
+ */
+public final class CacheKey<T> {
+    private static final Map<Class<?>, PersistentDataType<?,?>> PDC_TYPES = new HashMap<>();
+
+    static {
+        PDC_TYPES.put(Byte.class, PersistentDataType.BYTE);
+        PDC_TYPES.put(Short.class, PersistentDataType.SHORT);
+        PDC_TYPES.put(Integer.class, PersistentDataType.INTEGER);
+        PDC_TYPES.put(Long.class, PersistentDataType.LONG);
+        PDC_TYPES.put(Float.class, PersistentDataType.FLOAT);
+        PDC_TYPES.put(Double.class, PersistentDataType.DOUBLE);
+        PDC_TYPES.put(String.class, PersistentDataType.STRING);
+        PDC_TYPES.put(byte[].class, PersistentDataType.BYTE_ARRAY);
+        PDC_TYPES.put(int[].class, PersistentDataType.INTEGER_ARRAY);
+        PDC_TYPES.put(long[].class, PersistentDataType.LONG_ARRAY);
+    }
+
+    private final String pluginName;
+    private final String key;
+    private final Class<T> type;
+    private final PersistentDataType<T,T> pdcType;
+    private final String path;
+    private NamespacedKey namespacedKey;
+
+    /**
+     * Constructor of key
+     * @param pluginName Name of plugin that saves this data
+     * @param key Key of data
+     * @param type Class of data
+     * @throws IllegalArgumentException when type can't be saved in cache
+     */
+    @SuppressWarnings("unchecked")
+    CacheKey(String pluginName, String key, Class<T> type) {
+        this.pluginName = pluginName;
+        this.key = key;
+        this.type = type;
+        this.pdcType = (PersistentDataType<T, T>) PDC_TYPES.get(type);
+        if(this.pdcType == null) {
+            throw new IllegalArgumentException("You try to save wrong type!");
+        }
+        this.path = pluginName + "-" + key;
+    }
+
+    public String getPluginName() {
+        return pluginName;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Get PersistentDataType of data
+     * @return PersistentDataType that is used in metadata
+     */
+    public PersistentDataType<T,T> getPdcType() {
+        return pdcType;
+    }
+
+    /**
+     * Get key that is used in files (pluginName-key)
+     * @return Path of data in files
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Get key that is used in metadata. It's created on first use, because server keys don't need to be valid NamespacedKey
+     * @return NamespacedKey of data
+     */
+    public NamespacedKey getNamespacedKey() {
+        NamespacedKey result = namespacedKey;
+        if(result == null) {
+            result = new NamespacedKey(pluginName, key);
+            namespacedKey = result;
+        }
+        return result;
+    }
+
+    /**
+     * Check if class can be saved in cache
+     * @param type Class of data
+     * @return true if there is PersistentDataType of this class
+     */
+    public static boolean isSupported(Class<?> type) {
+        return PDC_TYPES.containsKey(type);
+    }
+
+    @Override
+    public String toString() {
+        return path + " (" + type.getSimpleName() + ")";
+    }
+}
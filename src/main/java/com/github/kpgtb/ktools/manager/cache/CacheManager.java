@@ -16,35 +16,76 @@
 
 package com.github.kpgtb.ktools.manager.cache;
 
+import com.github.kpgtb.ktools.manager.cache.shard.ICacheShard;
+import com.github.kpgtb.ktools.manager.cache.shard.LogCacheShard;
+import com.github.kpgtb.ktools.manager.cache.shard.MappedCacheShard;
+import com.github.kpgtb.ktools.manager.cache.shard.YamlCacheShard;
 import com.github.kpgtb.ktools.manager.debug.DebugManager;
 import com.github.kpgtb.ktools.manager.debug.DebugType;
+import com.github.kpgtb.ktools.util.time.KTime;
 import org.bukkit.Material;
-import org.bukkit.NamespacedKey;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
-import org.bukkit.persistence.PersistentDataContainer;
-import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * CacheManager stores small data in object metadata or in files
+ * CacheManager stores small data in object metadata or in files.
+ * Server, player and entity files can be used from any thread. Changes are written to files in one cache writer thread
  */
 public class CacheManager {
+    private static final List<String> SERVER_STORAGES = Arrays.asList("yaml", "log", "mmap");
+    private static final int MAX_CACHED_KEYS = 10000;
+    private static final Object MISSING = new Object();
+
     private final FileConfiguration config;
     private final File dataFolder;
     private final DebugManager debug;
+    private final boolean debugEnabled;
+    private final boolean playerMetadata;
+    private final boolean entityMetadata;
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, ConcurrentHashMap<Class<?>, CacheKey<?>>>> keys;
+    private final ConcurrentHashMap<UUID, MetadataMirror> metadataMirrors;
+
+    private File cacheFolder;
+    private ICacheShard serverShard;
+    private ServerCacheIndex serverIndex;
+    private final ConcurrentHashMap<UUID, LoadedShard> playerShards;
+    private final ConcurrentHashMap<UUID, LoadedShard> entityShards;
+    private final ConcurrentHashMap<File, ICacheShard> unloadedShards;
+    private final Set<UUID> onlinePlayers;
+    private final long shardIdleMillis;
 
-    private File cacheFile;
-    private FileConfiguration cacheConfiguration;
+    private final Object fileLock = new Object();
+    private final ExecutorService writer;
+    private final AtomicBoolean saveQueued;
+    private final ReentrantReadWriteLock closeLock;
+    private boolean closed;
+    private volatile boolean writeThrough;
+    private BukkitTask saveTask;
+    private BukkitTask sweepTask;
 
     /**
      * CacheManager constructor
@@ -56,10 +97,28 @@ public class CacheManager {
         this.config = config;
         this.dataFolder = dataFolder;
         this.debug = debug;
+        this.debugEnabled = debug.isEnabled(DebugType.CACHE);
+        this.playerMetadata = config.getString("cache.player").equalsIgnoreCase("metadata");
+        this.entityMetadata = config.getString("cache.entity").equalsIgnoreCase("metadata");
+        this.keys = new ConcurrentHashMap<>();
+        this.metadataMirrors = new ConcurrentHashMap<>();
+        this.playerShards = new ConcurrentHashMap<>();
+        this.entityShards = new ConcurrentHashMap<>();
+        this.unloadedShards = new ConcurrentHashMap<>();
+        this.onlinePlayers = ConcurrentHashMap.newKeySet();
+        this.shardIdleMillis = new KTime(config.getString("cache.shardIdleTime", "10m")).getMillis();
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "KTools Cache Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.saveQueued = new AtomicBoolean(false);
+        this.closeLock = new ReentrantReadWriteLock();
     }
 
     /**
-     * This method creates and configure cache file
+     * This method creates and configure cache files.
+     * Server cache is saved in cache/server.yml, and every player and entity has own file in cache/player and cache/entity
      */
     public void setupCacheFile() {
         debug.sendInfo(DebugType.CACHE, "Starting cache file setup...");
@@ -68,114 +127,673 @@ public class CacheManager {
             debug.sendInfo(DebugType.CACHE, "Created data folder.");
         }
 
-        cacheFile = new File(dataFolder, "cache.yml");
-        if(!cacheFile.exists()) {
+        cacheFolder = new File(dataFolder, "cache");
+        if(!cacheFolder.exists()) {
+            cacheFolder.mkdirs();
+            debug.sendInfo(DebugType.CACHE, "Created cache folder.");
+        }
+
+        serverShard = createServerShard();
+        migrateLegacyCacheFile();
+        serverIndex = new ServerCacheIndex(serverShard, config.getInt("cache.serverMaxEntries", 0), this::markDirty);
+
+        debug.sendInfo(DebugType.CACHE, "Finished cache file setup.");
+    }
+
+    /**
+     * This method creates shard for server cache with storage from config (cache.serverStorage).
+     * If server cache is saved in other storage, data is moved to the new one
+     * @return Shard of server cache
+     */
+    private ICacheShard createServerShard() {
+        String storage = config.getString("cache.serverStorage", "yaml").toLowerCase();
+        if(!SERVER_STORAGES.contains(storage)) {
+            debug.sendWarning(DebugType.CACHE, "Wrong server cache storage. Correct: yaml log mmap");
+            storage = "yaml";
+        }
+
+        boolean exists = getServerShardFile(storage).exists();
+        ICacheShard shard;
+        try {
+            shard = openServerShard(storage);
+        } catch (IOException e) {
+            debug.sendWarning(DebugType.CACHE, "Error while loading server cache!");
+            throw new RuntimeException(e);
+        }
+        debug.sendInfo(DebugType.CACHE, "Using " + shard.getClass().getSimpleName() + " for server cache.");
+
+        if(exists) {
+            return shard;
+        }
+
+        for(String otherStorage : SERVER_STORAGES) {
+            File otherFile = getServerShardFile(otherStorage);
+            if(otherStorage.equals(storage) || !otherFile.exists()) {
+                continue;
+            }
+
+            debug.sendInfo(DebugType.CACHE, "Migrating " + otherFile.getName() + " to " + shard.getFile().getName() + "...");
             try {
-                cacheFile.createNewFile();
-                debug.sendInfo(DebugType.CACHE, "Created cache file.");
+                ICacheShard other = openServerShard(otherStorage);
+                other.getValues().forEach((key, value) -> {
+                    try {
+                        shard.set(key, value);
+                    } catch (IllegalArgumentException e) {
+                        debug.sendWarning(DebugType.CACHE, "Skipped " + key + " during migration. Wrong type: " + value.getClass().getSimpleName());
+                    }
+                });
+                other.close();
+                shard.save();
+                if(otherFile.renameTo(new File(cacheFolder, otherFile.getName() + ".old"))) {
+                    debug.sendInfo(DebugType.CACHE, "Migrated " + otherFile.getName() + ". Old file is saved as " + otherFile.getName() + ".old");
+                }
             } catch (IOException e) {
-                debug.sendWarning(DebugType.CACHE, "Error while creating cache file!");
-                throw new RuntimeException(e);
+                debug.sendWarning(DebugType.CACHE, "Error while migrating " + otherFile.getName() + "!");
+                e.printStackTrace();
             }
+            break;
         }
 
-        cacheConfiguration = YamlConfiguration.loadConfiguration(cacheFile);
+        return shard;
+    }
 
-        debug.sendInfo(DebugType.CACHE, "Finished cache file setup.");
+    private ICacheShard openServerShard(String storage) throws IOException {
+        File file = getServerShardFile(storage);
+        switch (storage) {
+            case "log":
+                return new LogCacheShard(file);
+            case "mmap":
+                return new MappedCacheShard(file);
+            default:
+                return new YamlCacheShard(file);
+        }
+    }
+
+    private File getServerShardFile(String storage) {
+        switch (storage) {
+            case "log":
+                return new File(cacheFolder, "server.log");
+            case "mmap":
+                return new File(cacheFolder, "server.dat");
+            default:
+                return new File(cacheFolder, "server.yml");
+        }
     }
 
     /**
-     * With this method you can save data to cache
-     * @param target Object where you want to save data (or null if cacheSource is SERVER)
-     * @param pluginName Name of plugin that save this data
+     * This method moves data from old cache.yml to shards
+     */
+    private void migrateLegacyCacheFile() {
+        File legacyFile = new File(dataFolder, "cache.yml");
+        if(!legacyFile.exists()) {
+            return;
+        }
+
+        debug.sendInfo(DebugType.CACHE, "Migrating cache.yml to cache folder...");
+        FileConfiguration legacy = YamlConfiguration.loadConfiguration(legacyFile);
+
+        copySection(legacy.getConfigurationSection("server"), serverShard);
+
+        ConfigurationSection players = legacy.getConfigurationSection("player");
+        if(players != null) {
+            for(String uuid : players.getKeys(false)) {
+                ICacheShard shard = new YamlCacheShard(getShardFile(CacheSource.PLAYER, uuid));
+                copySection(players.getConfigurationSection(uuid), shard);
+                saveShard(shard);
+            }
+        }
+
+        ConfigurationSection entities = legacy.getConfigurationSection("entity");
+        if(entities != null) {
+            for(String uuid : entities.getKeys(false)) {
+                ICacheShard shard = new YamlCacheShard(getShardFile(CacheSource.ENTITY, uuid));
+                copySection(entities.getConfigurationSection(uuid), shard);
+                saveShard(shard);
+            }
+        }
+
+        if(!saveShard(serverShard)) {
+            debug.sendWarning(DebugType.CACHE, "Error while migrating cache.yml!");
+            return;
+        }
+
+        if(legacyFile.renameTo(new File(dataFolder, "cache.yml.old"))) {
+            debug.sendInfo(DebugType.CACHE, "Migrated cache.yml. Old file is saved as cache.yml.old");
+        }
+    }
+
+    private void copySection(@Nullable ConfigurationSection section, ICacheShard shard) {
+        if(section == null) {
+            return;
+        }
+        for(String path : section.getKeys(true)) {
+            if(section.isConfigurationSection(path)) {
+                continue;
+            }
+            shard.set(path, section.get(path));
+        }
+    }
+
+    private File getShardFile(CacheSource source, String uuid) {
+        return new File(cacheFolder, source.name().toLowerCase() + File.separator + uuid + ".yml");
+    }
+
+    /**
+     * This method returns shard of player or entity to read it. If shard isn't loaded, it's loaded from file
+     * @param source PLAYER or ENTITY
+     * @param uuid UUID of player or entity
+     * @return Shard with cache of this object
+     */
+    private ICacheShard getShard(CacheSource source, UUID uuid) {
+        ConcurrentHashMap<UUID, LoadedShard> shards = source == CacheSource.PLAYER ? playerShards : entityShards;
+        LoadedShard loaded = shards.get(uuid);
+        if(loaded == null) {
+            loaded = shards.computeIfAbsent(uuid, id -> loadShard(source, id));
+        }
+        loaded.lastAccess = System.currentTimeMillis();
+        return loaded.shard;
+    }
+
+    /**
+     * This method changes value in shard of player or entity. Shard can't be unloaded during change, so change isn't lost
+     * @param source PLAYER or ENTITY
+     * @param uuid UUID of player or entity
+     * @param path Path of data (pluginName-key)
+     * @param value Value or null to remove it
+     */
+    private void setShardValue(CacheSource source, UUID uuid, String path, @Nullable Object value) {
+        ConcurrentHashMap<UUID, LoadedShard> shards = source == CacheSource.PLAYER ? playerShards : entityShards;
+        startFileChange();
+        try {
+            shards.compute(uuid, (id, loaded) -> {
+                if(loaded == null) {
+                    loaded = loadShard(source, id);
+                }
+                loaded.shard.set(path, value);
+                loaded.lastAccess = System.currentTimeMillis();
+                return loaded;
+            });
+        } finally {
+            endFileChange();
+        }
+    }
+
+    /**
+     * This method changes value in server's cache
+     * @param path Path of data (pluginName-key)
+     * @param value Value or null to remove it
+     * @param expireAt Time in millis when value expires or 0 if it doesn't expire
+     */
+    private void setServerValue(String path, @Nullable Object value, long expireAt) {
+        startFileChange();
+        try {
+            if(value == null) {
+                serverIndex.remove(path);
+            } else {
+                serverIndex.set(path, value, expireAt);
+            }
+        } finally {
+            endFileChange();
+        }
+    }
+
+    /**
+     * This method must be called before change of file cache. Close waits until change is finished,
+     * and changes after close started are rejected, because they wouldn't be saved
+     * @throws IllegalStateException when cache is closed
+     */
+    private void startFileChange() {
+        closeLock.readLock().lock();
+        if(closed) {
+            closeLock.readLock().unlock();
+            throw new IllegalStateException("Cache is closed!");
+        }
+    }
+
+    private void endFileChange() {
+        closeLock.readLock().unlock();
+    }
+
+    private LoadedShard loadShard(CacheSource source, UUID uuid) {
+        File file = getShardFile(source, uuid.toString());
+        ICacheShard unloaded = unloadedShards.remove(file);
+        if(unloaded != null) {
+            return new LoadedShard(unloaded);
+        }
+        debug.sendInfo(DebugType.CACHE, "Loading " + source.name().toLowerCase() + " cache shard " + uuid + "...");
+        return new LoadedShard(new YamlCacheShard(file));
+    }
+
+    /**
+     * This method loads shard of player to memory. Shard of online player isn't unloaded when it's idle.
+     * Shard isn't loaded when player cache is stored in metadata
+     * @param uuid UUID of player
+     * @since 2.4.9
+     */
+    public void loadPlayer(UUID uuid) {
+        if(cacheFolder == null) {
+            return;
+        }
+        onlinePlayers.add(uuid);
+        if(playerMetadata) {
+            return;
+        }
+        getShard(CacheSource.PLAYER, uuid);
+    }
+
+    /**
+     * This method removes shard and metadata mirror of player from memory. Unsaved changes are saved in next save
+     * @param uuid UUID of player
+     * @since 2.4.9
+     */
+    public void unloadPlayer(UUID uuid) {
+        onlinePlayers.remove(uuid);
+        metadataMirrors.remove(uuid);
+        unloadShard(playerShards, uuid, 0L);
+    }
+
+    /**
+     * This method removes shard and metadata mirror of entity from memory. Unsaved changes are saved in next save
+     * @param uuid UUID of entity
+     * @since 2.4.9
+     */
+    public void unloadEntity(UUID uuid) {
+        metadataMirrors.remove(uuid);
+        unloadShard(entityShards, uuid, 0L);
+    }
+
+    /**
+     * This method removes shards and metadata mirrors of entities and offline players that weren't used for time from config (cache.shardIdleTime).
+     * It handles entities that were removed without unload event (e.g. despawned) and players that were read after quit
+     * @since 2.4.9
+     */
+    public void unloadIdle() {
+        if(shardIdleMillis <= 0) {
+            return;
+        }
+        long idleSince = System.currentTimeMillis() - shardIdleMillis;
+        int unloaded = 0;
+        for(UUID uuid : entityShards.keySet()) {
+            if(unloadShard(entityShards, uuid, idleSince)) {
+                unloaded++;
+            }
+        }
+        for(UUID uuid : playerShards.keySet()) {
+            if(!onlinePlayers.contains(uuid) && unloadShard(playerShards, uuid, idleSince)) {
+                unloaded++;
+            }
+        }
+        metadataMirrors.entrySet().removeIf(entry -> !onlinePlayers.contains(entry.getKey()) && entry.getValue().lastAccess < idleSince);
+        if(unloaded > 0) {
+            debug.sendInfo(DebugType.CACHE, "Unloaded " + unloaded + " idle cache shards.");
+        }
+    }
+
+    /**
+     * This method removes shard from memory. Changed shard is kept until next save
+     * @param shards Loaded shards
+     * @param uuid UUID of player or entity
+     * @param idleSince Shard is removed only when it wasn't used after this time (0 -> always)
+     * @return true if shard was removed
+     */
+    private boolean unloadShard(ConcurrentHashMap<UUID, LoadedShard> shards, UUID uuid, long idleSince) {
+        boolean[] result = new boolean[2];
+        // The same lock as in setShardValue, so no change is made in removed shard
+        shards.computeIfPresent(uuid, (id, loaded) -> {
+            if(idleSince > 0 && loaded.lastAccess >= idleSince) {
+                return loaded;
+            }
+            result[0] = true;
+            if(loaded.shard.isDirty()) {
+                unloadedShards.put(loaded.shard.getFile(), loaded.shard);
+                result[1] = true;
+            }
+            return null;
+        });
+        if(result[1] && writeThrough) {
+            requestSave();
+        }
+        return result[0];
+    }
+
+    /**
+     * This method starts task that saves changed cache to file.
+     * Changes are kept in memory and written in one save every interval from config (cache.saveInterval).
+     * Interval 0 saves cache file after every change.
+     * @param plugin Instance of plugin that owns the task
+     * @since 2.4.9
+     */
+    public void startSaveTask(JavaPlugin plugin) {
+        stopSaveTask();
+
+        long sweepInterval = new KTime(config.getString("cache.sweepInterval", "5m")).getTicks();
+        if(sweepInterval > 0) {
+            sweepTask = new BukkitRunnable() {
+                @Override
+                public void run() {
+                    sweepExpired();
+                    unloadIdle();
+                }
+            }.runTaskTimerAsynchronously(plugin, sweepInterval, sweepInterval);
+        }
+
+        long interval = new KTime(config.getString("cache.saveInterval", "30s")).getTicks();
+        if(interval <= 0) {
+            writeThrough = true;
+            debug.sendInfo(DebugType.CACHE, "Cache will be saved after every change.");
+            return;
+        }
+
+        writeThrough = false;
+        saveTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                requestSave();
+            }
+        }.runTaskTimerAsynchronously(plugin, interval, interval);
+        debug.sendInfo(DebugType.CACHE, "Started cache save task.");
+    }
+
+    /**
+     * This method saves changed cache in cache writer thread. Many requests are merged to one save
+     * @since 2.4.9
+     */
+    public void requestSave() {
+        if(!saveQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            writer.execute(() -> {
+                saveQueued.set(false);
+                save();
+            });
+        } catch (RejectedExecutionException e) {
+            // Cache is closed, all changes are saved in close()
+            saveQueued.set(false);
+        }
+    }
+
+    /**
+     * This method saves all cache shards that have unsaved changes in current thread.
+     * Use {@link #requestSave()} to not block current thread
+     * @since 2.4.9
+     */
+    public void save() {
+        if(serverShard == null) {
+            return;
+        }
+
+        synchronized (fileLock) {
+            int saved = 0;
+            if(serverShard.isDirty() && saveShard(serverShard)) {
+                saved++;
+            }
+            for(LoadedShard loaded : playerShards.values()) {
+                if(loaded.shard.isDirty() && saveShard(loaded.shard)) {
+                    saved++;
+                }
+            }
+            for(LoadedShard loaded : entityShards.values()) {
+                if(loaded.shard.isDirty() && saveShard(loaded.shard)) {
+                    saved++;
+                }
+            }
+            for(ICacheShard shard : unloadedShards.values()) {
+                if(saveShard(shard)) {
+                    unloadedShards.remove(shard.getFile(), shard);
+                    saved++;
+                }
+            }
+            if(saved > 0) {
+                debug.sendInfo(DebugType.CACHE, "Saved " + saved + " cache shards.");
+            }
+        }
+    }
+
+    private boolean saveShard(ICacheShard shard) {
+        synchronized (fileLock) {
+            try {
+                shard.save();
+                return true;
+            } catch (IOException e) {
+                debug.sendWarning(DebugType.CACHE, "Error while saving cache shard " + shard.getFile().getName() + "!");
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * This method stops save task and saves all unsaved changes. Next changes of server, player and entity files are rejected
+     * @since 2.4.9
+     */
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        stopSaveTask();
+        writer.shutdown();
+        try {
+            if(!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                debug.sendWarning(DebugType.CACHE, "Cache writer didn't finish in 10 seconds!");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        save();
+        if(serverShard == null) {
+            return;
+        }
+        try {
+            serverShard.close();
+        } catch (IOException e) {
+            debug.sendWarning(DebugType.CACHE, "Error while closing server cache!");
+            e.printStackTrace();
+        }
+    }
+
+    private void stopSaveTask() {
+        if(sweepTask != null) {
+            sweepTask.cancel();
+            sweepTask = null;
+        }
+        if(saveTask == null) {
+            return;
+        }
+        saveTask.cancel();
+        saveTask = null;
+    }
+
+    /**
+     * This method removes all expired data from server's cache.
+     * Expired data is also removed when you try to get it
+     * @since 2.4.9
+     */
+    public void sweepExpired() {
+        if(serverIndex == null) {
+            return;
+        }
+        int removed = serverIndex.sweep();
+        if(removed > 0) {
+            debug.sendInfo(DebugType.CACHE, "Removed " + removed + " expired server cache entries.");
+            markDirty();
+        }
+    }
+
+    void markDirty() {
+        if(writeThrough) {
+            requestSave();
+        }
+    }
+
+    /**
+     * This method returns reusable key of data. Keys are cached per key and type, so you can call it often, but it's better to save key in field
+     * @param pluginName Name of plugin that saves this data
      * @param key Key of data
-     * @param data Object with data
+     * @param type Class of data
+     * @return Key of data
+     * @throws IllegalArgumentException when type can't be saved in cache
+     * @since 2.4.9
      */
     @SuppressWarnings("unchecked")
-    public <T> void setData(Object target, String pluginName, String key, T data) {
-        CacheSource cacheSource = getSource(target);
+    public <T> CacheKey<T> getKey(String pluginName, String key, Class<T> type) {
+        ConcurrentHashMap<String, ConcurrentHashMap<Class<?>, CacheKey<?>>> pluginKeys = keys.get(pluginName);
+        if(pluginKeys == null) {
+            pluginKeys = keys.computeIfAbsent(pluginName, name -> new ConcurrentHashMap<>());
+        }
+
+        ConcurrentHashMap<Class<?>, CacheKey<?>> typeKeys = pluginKeys.get(key);
+        if(typeKeys == null) {
+            if(pluginKeys.size() >= MAX_CACHED_KEYS) {
+                return new CacheKey<>(pluginName, key, type);
+            }
+            typeKeys = pluginKeys.computeIfAbsent(key, path -> new ConcurrentHashMap<>());
+        }
+
+        CacheKey<?> cacheKey = typeKeys.get(type);
+        if(cacheKey == null) {
+            cacheKey = typeKeys.computeIfAbsent(type, clazz -> new CacheKey<>(pluginName, key, type));
+        }
+        return (CacheKey<T>) cacheKey;
+    }
+
+    /**
+     * This method returns cached key with any type. It's used in removing, where type of key doesn't matter
+     * @param pluginName Name of plugin that saves this data
+     * @param key Key of data
+     * @return Key of data
+     */
+    CacheKey<?> getAnyKey(String pluginName, String key) {
+        ConcurrentHashMap<String, ConcurrentHashMap<Class<?>, CacheKey<?>>> pluginKeys = keys.get(pluginName);
+        ConcurrentHashMap<Class<?>, CacheKey<?>> typeKeys = pluginKeys == null ? null : pluginKeys.get(key);
+        if(typeKeys != null) {
+            for(CacheKey<?> cacheKey : typeKeys.values()) {
+                return cacheKey;
+            }
+        }
+        return getKey(pluginName, key, String.class);
+    }
 
-        String finalKey = pluginName + "-" + key;
-        debug.sendInfo(DebugType.CACHE, "Saving cache with type " + cacheSource.name() + " key: " + finalKey + " data ("+data.getClass().getSimpleName()+"): " + data+ "...");
+    /**
+     * This method starts batch of changes. Changes are applied in {@link CacheBatch#commit()},
+     * so files are saved once and every item stack gets new meta once
+     * @return New batch
+     * @since 2.4.9
+     */
+    public CacheBatch batch() {
+        return new CacheBatch(this);
+    }
 
-        Class<T> clazz = (Class<T>) data.getClass();
-        PersistentDataType<T,T> pdcType = getPdcType(clazz);
+    /**
+     * With this method you can save data to cache
+     * @param target Object where you want to save data (or null if cacheSource is SERVER)
+     * @param key Key of data
+     * @param data Object with data
+     * @since 2.4.9
+     */
+    public <T> void setData(Object target, CacheKey<T> key, T data) {
+        if(putData(target, key, data)) {
+            markDirty();
+        }
+    }
 
-        if(pdcType == null) {
-            throw new IllegalArgumentException("You try to save wrong type!");
+    /**
+     * This method saves data in memory or metadata without saving files
+     * @param target Object where you want to save data (or null if cacheSource is SERVER)
+     * @param key Key of data
+     * @param data Object with data
+     * @return true if file cache was changed
+     */
+    <T> boolean putData(Object target, CacheKey<T> key, T data) {
+        CacheSource cacheSource = getSource(target);
+        if(debugEnabled) {
+            debug.sendInfo(DebugType.CACHE, "Saving cache with type " + cacheSource.name() + " key: " + key.getPath() + " data ("+data.getClass().getSimpleName()+"): " + data+ "...");
         }
 
         switch (cacheSource) {
             case SERVER:
-                cacheConfiguration.set("server."+finalKey, data);
-                try {
-                    cacheConfiguration.save(cacheFile);
-                    debug.sendInfo(DebugType.CACHE, "Saved server cache!");
-                } catch (IOException e) {
-                    debug.sendWarning(DebugType.CACHE, "Error while saving server cache!");
-                    throw new RuntimeException(e);
+                setServerValue(key.getPath(), data, 0);
+                if(debugEnabled) {
+                    debug.sendInfo(DebugType.CACHE, "Saved server cache in memory!");
                 }
-                break;
+                return true;
             case PLAYER:
                 Player player = (Player) target;
-                boolean playerSaveMeta = config.getString("cache.player").equalsIgnoreCase("metadata");
-
-                if(playerSaveMeta) {
-                    PersistentDataContainer playerPDC = player.getPersistentDataContainer();
-                    NamespacedKey playerKey = new NamespacedKey(pluginName,key);
-                    playerPDC.set(playerKey, pdcType, data);
-                    debug.sendInfo(DebugType.CACHE, "Saved player cache in metadata.");
-                    return;
+
+                if(playerMetadata) {
+                    player.getPersistentDataContainer().set(key.getNamespacedKey(), key.getPdcType(), data);
+                    mirrorMetadata(player, key, data);
+                    if(debugEnabled) {
+                        debug.sendInfo(DebugType.CACHE, "Saved player cache in metadata.");
+                    }
+                    return false;
                 }
 
-                cacheConfiguration.set("player." + player.getUniqueId().toString() + "." + finalKey, data);
-                try {
-                    cacheConfiguration.save(cacheFile);
+                setShardValue(CacheSource.PLAYER, player.getUniqueId(), key.getPath(), data);
+                if(debugEnabled) {
                     debug.sendInfo(DebugType.CACHE, "Saved player cache in files.");
-                } catch (IOException e) {
-                    debug.sendWarning(DebugType.CACHE, "Error while saving player cache in files.");
-                    throw new RuntimeException(e);
                 }
-                break;
+                return true;
             case ENTITY:
                 Entity entity = (Entity) target;
-                boolean entitySaveMeta = config.getString("cache.entity").equalsIgnoreCase("metadata");
-
-                if(entitySaveMeta) {
-                    PersistentDataContainer entityPDC = entity.getPersistentDataContainer();
-                    NamespacedKey entityKey = new NamespacedKey(pluginName,key);
-                    entityPDC.set(entityKey, pdcType, data);
-                    debug.sendInfo(DebugType.CACHE, "Saved entity cache in metadata.");
-                    return;
+
+                if(entityMetadata) {
+                    entity.getPersistentDataContainer().set(key.getNamespacedKey(), key.getPdcType(), data);
+                    mirrorMetadata(entity, key, data);
+                    if(debugEnabled) {
+                        debug.sendInfo(DebugType.CACHE, "Saved entity cache in metadata.");
+                    }
+                    return false;
                 }
 
-                cacheConfiguration.set("entity." + entity.getUniqueId() + "." + finalKey, data);
-                try {
-                    cacheConfiguration.save(cacheFile);
+                setShardValue(CacheSource.ENTITY, entity.getUniqueId(), key.getPath(), data);
+                if(debugEnabled) {
                     debug.sendInfo(DebugType.CACHE, "Saved entity cache in files.");
-                } catch (IOException e) {
-                    debug.sendWarning(DebugType.CACHE, "Error while saving entity cache in files.");
-                    throw new RuntimeException(e);
                 }
-                break;
+                return true;
             case ITEMSTACK:
                 ItemStack itemStack = (ItemStack) target;
 
                 if(itemStack == null || itemStack.getType().equals(Material.AIR)) {
                     debug.sendWarning(DebugType.CACHE, "Item stack is empty.");
-                    return;
+                    return false;
                 }
 
                 ItemMeta meta = itemStack.getItemMeta();
-                PersistentDataContainer itemPDC = meta.getPersistentDataContainer();
-                NamespacedKey itemKey = new NamespacedKey(pluginName,key);
-                itemPDC.set(itemKey, pdcType, data);
+                meta.getPersistentDataContainer().set(key.getNamespacedKey(), key.getPdcType(), data);
                 itemStack.setItemMeta(meta);
 
-                debug.sendInfo(DebugType.CACHE, "Saved item stack cache in metadata.");
-
-                break;
+                if(debugEnabled) {
+                    debug.sendInfo(DebugType.CACHE, "Saved item stack cache in metadata.");
+                }
+                return false;
         }
+        return false;
+    }
+
+    /**
+     * With this method you can save data to cache
+     * @param target Object where you want to save data (or null if cacheSource is SERVER)
+     * @param pluginName Name of plugin that save this data
+     * @param key Key of data
+     * @param data Object with data
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void setData(Object target, String pluginName, String key, T data) {
+        this.setData(target, getKey(pluginName, key, (Class<T>) data.getClass()), data);
+    }
+
+    /**
+     * With this method you can save data to server's cache
+     * @param key Key of data
+     * @param data Object with data
+     * @since 2.4.9
+     */
+    public <T> void setServerData(CacheKey<T> key, T data) {
+        this.setData(null, key, data);
     }
 
     /**
@@ -188,89 +806,137 @@ public class CacheManager {
         this.setData(null, pluginName,key,data);
     }
 
+    /**
+     * With this method you can save data to server's cache that expires after some time
+     * @param key Key of data
+     * @param data Object with data
+     * @param ttl Time after that data is removed
+     * @since 2.4.9
+     */
+    public <T> void setServerData(CacheKey<T> key, T data, KTime ttl) {
+        if(debugEnabled) {
+            debug.sendInfo(DebugType.CACHE, "Saving server cache key: " + key.getPath() + " data ("+data.getClass().getSimpleName()+"): " + data + " for " + ttl.getText() + "...");
+        }
+        setServerValue(key.getPath(), data, System.currentTimeMillis() + Math.max(1L, ttl.getMillis()));
+        markDirty();
+    }
+
+    /**
+     * With this method you can save data to server's cache that expires after some time
+     * @param pluginName Name of plugin that save this data
+     * @param key Key of data
+     * @param data Object with data
+     * @param ttl Time after that data is removed
+     * @since 2.4.9
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void setServerData(String pluginName, String key, T data, KTime ttl) {
+        this.setServerData(getKey(pluginName, key, (Class<T>) data.getClass()), data, ttl);
+    }
+
     /**
      * With this method you can remove data from cache
      * @param target Object where you want to save data (or null if cacheSource is SERVER)
-     * @param pluginName Name of plugin that save this data
      * @param key Key of data
-     * @since 1.3.0
+     * @since 2.4.9
      */
-    public void removeData( Object target, String pluginName, String key) {
+    public void removeData(Object target, CacheKey<?> key) {
+        if(deleteData(target, key)) {
+            markDirty();
+        }
+    }
+
+    /**
+     * This method removes data from memory or metadata without saving files
+     * @param target Object where you want to remove data (or null if cacheSource is SERVER)
+     * @param key Key of data
+     * @return true if file cache was changed
+     */
+    boolean deleteData(Object target, CacheKey<?> key) {
         CacheSource cacheSource = getSource(target);
-        String finalKey = pluginName + "-" + key;
-        debug.sendInfo(DebugType.CACHE, "Removing cache with type " + cacheSource.name() + " key: " + finalKey + "...");
+        if(debugEnabled) {
+            debug.sendInfo(DebugType.CACHE, "Removing cache with type " + cacheSource.name() + " key: " + key.getPath() + "...");
+        }
 
         switch (cacheSource) {
             case SERVER:
-                cacheConfiguration.set("server."+finalKey, null);
-                try {
-                    cacheConfiguration.save(cacheFile);
-                    debug.sendInfo(DebugType.CACHE, "Removed server cache!");
-                } catch (IOException e) {
-                    debug.sendWarning(DebugType.CACHE, "Error while removing server cache!");
-                    throw new RuntimeException(e);
+                setServerValue(key.getPath(), null, 0);
+                if(debugEnabled) {
+                    debug.sendInfo(DebugType.CACHE, "Removed server cache from memory!");
                 }
-                break;
+                return true;
             case PLAYER:
                 Player player = (Player) target;
-                boolean playerSaveMeta = config.getString("cache.player").equalsIgnoreCase("metadata");
-
-                if(playerSaveMeta) {
-                    PersistentDataContainer playerPDC = player.getPersistentDataContainer();
-                    NamespacedKey playerKey = new NamespacedKey(pluginName,key);
-                    playerPDC.remove(playerKey);
-                    debug.sendInfo(DebugType.CACHE, "Removed player cache from metadata.");
-                    return;
+
+                if(playerMetadata) {
+                    player.getPersistentDataContainer().remove(key.getNamespacedKey());
+                    mirrorMetadata(player, key, null);
+                    if(debugEnabled) {
+                        debug.sendInfo(DebugType.CACHE, "Removed player cache from metadata.");
+                    }
+                    return false;
                 }
 
-                cacheConfiguration.set("player." + player.getUniqueId().toString() + "." + finalKey, null);
-                try {
-                    cacheConfiguration.save(cacheFile);
+                setShardValue(CacheSource.PLAYER, player.getUniqueId(), key.getPath(), null);
+                if(debugEnabled) {
                     debug.sendInfo(DebugType.CACHE, "Removed player cache from files.");
-                } catch (IOException e) {
-                    debug.sendWarning(DebugType.CACHE, "Error while removing player cache from files.");
-                    throw new RuntimeException(e);
                 }
-                break;
+                return true;
             case ENTITY:
                 Entity entity = (Entity) target;
-                boolean entitySaveMeta = config.getString("cache.entity").equalsIgnoreCase("metadata");
-
-                if(entitySaveMeta) {
-                    PersistentDataContainer entityPDC = entity.getPersistentDataContainer();
-                    NamespacedKey entityKey = new NamespacedKey(pluginName,key);
-                    entityPDC.remove(entityKey);
-                    debug.sendInfo(DebugType.CACHE, "Removing entity cache from metadata.");
-                    return;
+
+                if(entityMetadata) {
+                    entity.getPersistentDataContainer().remove(key.getNamespacedKey());
+                    mirrorMetadata(entity, key, null);
+                    if(debugEnabled) {
+                        debug.sendInfo(DebugType.CACHE, "Removing entity cache from metadata.");
+                    }
+                    return false;
                 }
 
-                cacheConfiguration.set("entity." + entity.getUniqueId() + "." + finalKey, null);
-                try {
-                    cacheConfiguration.save(cacheFile);
+                setShardValue(CacheSource.ENTITY, entity.getUniqueId(), key.getPath(), null);
+                if(debugEnabled) {
                     debug.sendInfo(DebugType.CACHE, "Removed entity cache from files.");
-                } catch (IOException e) {
-                    debug.sendWarning(DebugType.CACHE, "Error while removing entity cache from files.");
-                    throw new RuntimeException(e);
                 }
-                break;
+                return true;
             case ITEMSTACK:
                 ItemStack itemStack = (ItemStack) target;
 
                 if(itemStack == null || itemStack.getType().equals(Material.AIR)) {
                     debug.sendWarning(DebugType.CACHE, "Item stack is empty.");
-                    return;
+                    return false;
                 }
 
                 ItemMeta meta = itemStack.getItemMeta();
-                PersistentDataContainer itemPDC = meta.getPersistentDataContainer();
-                NamespacedKey itemKey = new NamespacedKey(pluginName,key);
-                itemPDC.remove(itemKey);
+                meta.getPersistentDataContainer().remove(key.getNamespacedKey());
                 itemStack.setItemMeta(meta);
 
-                debug.sendInfo(DebugType.CACHE, "Removed item stack cache from metadata.");
-
-                break;
+                if(debugEnabled) {
+                    debug.sendInfo(DebugType.CACHE, "Removed item stack cache from metadata.");
+                }
+                return false;
         }
+        return false;
+    }
+
+    /**
+     * With this method you can remove data from cache
+     * @param target Object where you want to save data (or null if cacheSource is SERVER)
+     * @param pluginName Name of plugin that save this data
+     * @param key Key of data
+     * @since 1.3.0
+     */
+    public void removeData( Object target, String pluginName, String key) {
+        this.removeData(target, getAnyKey(pluginName, key));
+    }
+
+    /**
+     * With this method you can remove data from server's cache
+     * @param key Key of data
+     * @since 2.4.9
+     */
+    public void removeServerData(CacheKey<?> key) {
+        this.removeData(null, key);
     }
 
     /**
@@ -286,48 +952,37 @@ public class CacheManager {
     /**
      * This method returns data from cache
      * @param target Object from you want to get data (or null if cacheSource is SERVER)
-     * @param pluginName Name of plugin that saves this data
      * @param key Key of data
-     * @param expected Class that is expected in return
      * @return Object with data or null if there isn't any data
+     * @since 2.4.9
      */
     @Nullable
     @SuppressWarnings("unchecked")
-    public <T> T getData(Object target, String pluginName, String key, Class<T> expected) {
+    public <T> T getData(Object target, CacheKey<T> key) {
         CacheSource cacheSource = getSource(target);
-        PersistentDataType<T,T> pdcType = getPdcType(expected);
-
-        if(pdcType == null) {
-            throw new IllegalArgumentException("You try to save wrong type!");
+        if(debugEnabled) {
+            debug.sendInfo(DebugType.CACHE, "Getting cache with type " + cacheSource.name() + " key: " + key.getPath() +  "...");
         }
 
-        String finalKey = pluginName + "-" + key;
-        debug.sendInfo(DebugType.CACHE, "Getting cache with type " + cacheSource.name() + " key: " + finalKey +  "...");
         switch (cacheSource) {
             case SERVER:
-                return (T) cacheConfiguration.get("server."+finalKey);
+                return (T) serverIndex.get(key.getPath());
             case PLAYER:
                 Player player = (Player) target;
-                boolean playerSaveMeta = config.getString("cache.player").equalsIgnoreCase("metadata");
 
-                if(playerSaveMeta) {
-                    PersistentDataContainer playerPDC = player.getPersistentDataContainer();
-                    NamespacedKey playerKey = new NamespacedKey(pluginName,key);
-                    return playerPDC.get(playerKey, pdcType);
+                if(playerMetadata) {
+                    return getMetadata(player, key);
                 }
 
-                return (T) cacheConfiguration.get("player." + player.getUniqueId().toString() + "." + finalKey);
+                return (T) getShard(CacheSource.PLAYER, player.getUniqueId()).get(key.getPath());
             case ENTITY:
                 Entity entity = (Entity) target;
-                boolean entitySaveMeta = config.getString("cache.entity").equalsIgnoreCase("metadata");
 
-                if(entitySaveMeta) {
-                    PersistentDataContainer entityPDC = entity.getPersistentDataContainer();
-                    NamespacedKey entityKey = new NamespacedKey(pluginName,key);
-                    return entityPDC.get(entityKey, pdcType);
+                if(entityMetadata) {
+                    return getMetadata(entity, key);
                 }
 
-                return (T) cacheConfiguration.get("entity." + entity.getUniqueId() + "." + finalKey);
+                return (T) getShard(CacheSource.ENTITY, entity.getUniqueId()).get(key.getPath());
             case ITEMSTACK:
                 ItemStack itemStack = (ItemStack) target;
 
@@ -337,13 +992,35 @@ public class CacheManager {
                 }
 
                 ItemMeta meta = itemStack.getItemMeta();
-                PersistentDataContainer itemPDC = meta.getPersistentDataContainer();
-                NamespacedKey itemKey = new NamespacedKey(pluginName,key);
-                return itemPDC.get(itemKey,pdcType);
+                return meta.getPersistentDataContainer().get(key.getNamespacedKey(), key.getPdcType());
         }
         return null;
     }
 
+    /**
+     * This method returns data from cache
+     * @param target Object from you want to get data (or null if cacheSource is SERVER)
+     * @param pluginName Name of plugin that saves this data
+     * @param key Key of data
+     * @param expected Class that is expected in return
+     * @return Object with data or null if there isn't any data
+     */
+    @Nullable
+    public <T> T getData(Object target, String pluginName, String key, Class<T> expected) {
+        return this.getData(target, getKey(pluginName, key, expected));
+    }
+
+    /**
+     * This method returns data from server's cache
+     * @param key Key of data
+     * @return Object with data or null if there isn't any data
+     * @since 2.4.9
+     */
+    @Nullable
+    public <T> T getServerData(CacheKey<T> key) {
+        return this.getData(null, key);
+    }
+
     /**
      * This method returns data from server's cache
      * @param pluginName Name of plugin that saves this data
@@ -359,20 +1036,20 @@ public class CacheManager {
     /**
      * This method returns data from cache or defined data
      * @param target Object from you want to get data (or null if cacheSource is SERVER)
-     * @param pluginName Name of plugin that saves this data
      * @param key Key of data
      * @param or Data that should be returned when data is null
      * @return Object with data
+     * @since 2.4.9
      */
     @NotNull
-    @SuppressWarnings("unchecked")
-    public <T> T getDataOr(Object target, String pluginName, String key, T or) {
-        Class<T> expected = (Class<T>) or.getClass();
-        if(!hasData(target, pluginName,key,expected)) {
+    public <T> T getDataOr(Object target, CacheKey<T> key, T or) {
+        T result;
+        try {
+            result = getData(target, key);
+        } catch (Exception e) {
             return or;
         }
 
-        T result = getData(target,pluginName,key,expected);
         if(result == null) {
             return or;
         }
@@ -380,6 +1057,38 @@ public class CacheManager {
         return result;
     }
 
+    /**
+     * This method returns data from cache or defined data
+     * @param target Object from you want to get data (or null if cacheSource is SERVER)
+     * @param pluginName Name of plugin that saves this data
+     * @param key Key of data
+     * @param or Data that should be returned when data is null
+     * @return Object with data
+     */
+    @NotNull
+    @SuppressWarnings("unchecked")
+    public <T> T getDataOr(Object target, String pluginName, String key, T or) {
+        CacheKey<T> cacheKey;
+        try {
+            cacheKey = getKey(pluginName, key, (Class<T>) or.getClass());
+        } catch (IllegalArgumentException e) {
+            return or;
+        }
+        return getDataOr(target, cacheKey, or);
+    }
+
+    /**
+     * This method returns data from server's cache or defined data
+     * @param key Key of data
+     * @param or Data that should be returned when data is null
+     * @return Object with data
+     * @since 2.4.9
+     */
+    @NotNull
+    public <T> T getServerDataOr(CacheKey<T> key, T or) {
+        return getDataOr(null, key, or);
+    }
+
     /**
      * This method returns data from server's cache or defined data
      * @param pluginName Name of plugin that saves this data
@@ -392,6 +1101,21 @@ public class CacheManager {
         return getDataOr(null,pluginName,key,or);
     }
 
+    /**
+     * This method checks if cache contains data
+     * @param target Object from you want to get data (or null if cacheSource is SERVER)
+     * @param key Key of data
+     * @return true if exists
+     * @since 2.4.9
+     */
+    public <T> boolean hasData(Object target, CacheKey<T> key) {
+        try {
+            return getData(target, key) != null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     /**
      * This method checks if cache contains data
      * @param target Object from you want to get data (or null if cacheSource is SERVER)
@@ -403,18 +1127,22 @@ public class CacheManager {
      */
     public <T> boolean hasData(Object target, String pluginName, String key, Class<T> expected) {
         try {
-            T data = getData(target,pluginName,key,expected);
-
-            if(data == null) {
-                return false;
-            }
-
-            return true;
+            return hasData(target, getKey(pluginName, key, expected));
         } catch (Exception e) {
             return false;
         }
     }
 
+    /**
+     * This method checks if server's cache contains data
+     * @param key Key of data
+     * @return true if exists
+     * @since 2.4.9
+     */
+    public <T> boolean hasServerData(CacheKey<T> key) {
+        return this.hasData(null, key);
+    }
+
     /**
      * This method checks if server's cache contains data
      * @param pluginName Name of plugin that saves this data
@@ -428,25 +1156,66 @@ public class CacheManager {
     }
 
     /**
-     * This method returns PersistentDataType from class
-     * @param clazz Class that is expected
-     * @return PersistentDataType of this class or null if there isn't any PDT with this class
+     * This method returns data from metadata of player or entity.
+     * Values are mirrored in memory, so next reads of the same key don't touch PersistentDataContainer
+     * @param entity Player or entity
+     * @param key Key of data
+     * @return Object with data or null if there isn't any data
      */
     @Nullable
     @SuppressWarnings("unchecked")
-    private <Z> PersistentDataType<Z,Z> getPdcType(Class<Z> clazz) {
-        HashMap<Class<?>, PersistentDataType<?,?>> acceptedTypes = new HashMap<>();
-        acceptedTypes.put(Byte.class, PersistentDataType.BYTE);
-        acceptedTypes.put(Short.class, PersistentDataType.SHORT);
-        acceptedTypes.put(Integer.class, PersistentDataType.INTEGER);
-        acceptedTypes.put(Long.class, PersistentDataType.LONG);
-        acceptedTypes.put(Float.class, PersistentDataType.FLOAT);
-        acceptedTypes.put(Double.class, PersistentDataType.DOUBLE);
-        acceptedTypes.put(String.class, PersistentDataType.STRING);
-        acceptedTypes.put(byte[].class, PersistentDataType.BYTE_ARRAY);
-        acceptedTypes.put(int[].class, PersistentDataType.INTEGER_ARRAY);
-        acceptedTypes.put(long[].class, PersistentDataType.LONG_ARRAY);
-        return (PersistentDataType<Z, Z>) acceptedTypes.get(clazz);
+    private <T> T getMetadata(Entity entity, CacheKey<T> key) {
+        MetadataMirror mirror = getMirror(entity);
+        if(mirror != null) {
+            Object value = mirror.values.get(key.getPath());
+            if(value == MISSING) {
+                return null;
+            }
+            if(key.getType().isInstance(value)) {
+                return (T) value;
+            }
+        }
+
+        T result = entity.getPersistentDataContainer().get(key.getNamespacedKey(), key.getPdcType());
+        if(mirror != null) {
+            // Value set or removed after the read above is already mirrored and mustn't be replaced with the older one
+            mirror.values.putIfAbsent(key.getPath(), result == null ? MISSING : result);
+        }
+        return result;
+    }
+
+    /**
+     * This method updates mirror of metadata after set or remove
+     * @param entity Player or entity
+     * @param key Key of data
+     * @param data New data or null if data is removed
+     */
+    private void mirrorMetadata(Entity entity, CacheKey<?> key, @Nullable Object data) {
+        MetadataMirror mirror = getMirror(entity);
+        if(mirror == null) {
+            return;
+        }
+        mirror.values.put(key.getPath(), data == null ? MISSING : data);
+    }
+
+    /**
+     * This method returns mirror of metadata. Mirror isn't created for removed entities, so it won't stay in memory after unload.
+     * Mirrors are removed with shards, also when they are idle ({@link #unloadIdle()})
+     * @param entity Player or entity
+     * @return Mirror or null
+     */
+    @Nullable
+    private MetadataMirror getMirror(Entity entity) {
+        UUID uuid = entity.getUniqueId();
+        MetadataMirror mirror = metadataMirrors.get(uuid);
+        if(mirror == null) {
+            if(!entity.isValid()) {
+                return null;
+            }
+            mirror = metadataMirrors.computeIfAbsent(uuid, id -> new MetadataMirror());
+        }
+        mirror.lastAccess = System.currentTimeMillis();
+        return mirror;
     }
 
     /**
@@ -465,4 +1234,25 @@ public class CacheManager {
 
         throw new IllegalArgumentException("Wrong target in cache. Excepted: null, player, entity, itemstack. Recived: " + target.getClass());
     }
+
+    /**
+     * Loaded shard of player or entity with time of last use
+     */
+    private static class LoadedShard {
+        private final ICacheShard shard;
+        private volatile long lastAccess;
+
+        private LoadedShard(ICacheShard shard) {
+            this.shard = shard;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Values of metadata mirrored in memory with time of last use
+     */
+    private static class MetadataMirror {
+        private final ConcurrentHashMap<String, Object> values = new ConcurrentHashMap<>();
+        private volatile long lastAccess = System.currentTimeMillis();
+    }
 }
@@ -0,0 +1,231 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.cache;
+
+import com.github.kpgtb.ktools.manager.cache.shard.ICacheShard;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Index of server cache that handles expiration time of keys and limit of entries.
+ * Expiration time is saved in the same shard (ktools-ttl-pluginName-key), so it stays after restart.
+ * Order of use isn't saved, so after restart entries are ordered like in file.
+ * Reads don't use locks. They are only written to buffer, and order is updated in next change
+ */
+class ServerCacheIndex {
+    static final String TTL_PREFIX = "ktools-ttl-";
+    private static final int READ_BUFFER_SIZE = 1024;
+
+    private final ICacheShard shard;
+    private final int maxEntries;
+    private final LinkedHashMap<String, Boolean> recent;
+    private final ConcurrentHashMap<String, Long> expiries;
+    private final ConcurrentLinkedQueue<String> reads;
+    private final AtomicInteger readCount;
+    private final Runnable changeListener;
+    private final Object lock = new Object();
+
+    /**
+     * Constructor of index. It reads only keys of shard and values of expiration times, so values aren't loaded to heap
+     * @param shard Shard of server cache
+     * @param maxEntries Max count of entries or 0 if there isn't limit
+     * @param changeListener Called when index removes values from shard by itself (e.g. expired value on read)
+     */
+    ServerCacheIndex(ICacheShard shard, int maxEntries, Runnable changeListener) {
+        this.shard = shard;
+        this.maxEntries = Math.max(0, maxEntries);
+        this.changeListener = changeListener;
+        this.recent = new LinkedHashMap<>(16, 0.75f, true);
+        this.expiries = new ConcurrentHashMap<>();
+        this.reads = new ConcurrentLinkedQueue<>();
+        this.readCount = new AtomicInteger();
+
+        List<String> ttlKeys = new ArrayList<>();
+        shard.forEachKey(key -> {
+            if(key.startsWith(TTL_PREFIX)) {
+                ttlKeys.add(key);
+            } else if(this.maxEntries > 0) {
+                recent.put(key, Boolean.TRUE);
+            }
+        });
+
+        boolean changed = false;
+        for(String key : ttlKeys) {
+            String path = key.substring(TTL_PREFIX.length());
+            Object expireAt = shard.get(key);
+            if(!(expireAt instanceof Number) || shard.get(path) == null) {
+                shard.set(key, null);
+                changed = true;
+                continue;
+            }
+            expiries.put(path, ((Number) expireAt).longValue());
+        }
+
+        synchronized (lock) {
+            changed |= evict();
+        }
+        if(changed) {
+            changeListener.run();
+        }
+    }
+
+    /**
+     * Get value from shard. Expired value is removed
+     * @param path Path of data (pluginName-key)
+     * @return Value or null
+     */
+    @Nullable
+    Object get(String path) {
+        if(!expiries.isEmpty()) {
+            Long expireAt = expiries.get(path);
+            if(expireAt != null && expireAt <= System.currentTimeMillis() && removeExpired(path)) {
+                changeListener.run();
+                return null;
+            }
+        }
+        // When buffer is full, reads are skipped. Order of use doesn't have to be exact
+        if(maxEntries > 0 && readCount.get() < READ_BUFFER_SIZE) {
+            readCount.incrementAndGet();
+            reads.offer(path);
+        }
+        return shard.get(path);
+    }
+
+    /**
+     * Set value in shard
+     * @param path Path of data (pluginName-key)
+     * @param value Value
+     * @param expireAt Time in millis when value expires or 0 if it doesn't expire
+     */
+    void set(String path, Object value, long expireAt) {
+        synchronized (lock) {
+            shard.set(path, value);
+            if(expireAt > 0) {
+                expiries.put(path, expireAt);
+                shard.set(TTL_PREFIX + path, expireAt);
+            } else if(expiries.remove(path) != null) {
+                shard.set(TTL_PREFIX + path, null);
+            }
+
+            if(maxEntries > 0) {
+                drainReads();
+                recent.put(path, Boolean.TRUE);
+                evict();
+            }
+        }
+    }
+
+    /**
+     * Remove value from shard
+     * @param path Path of data (pluginName-key)
+     */
+    void remove(String path) {
+        synchronized (lock) {
+            shard.set(path, null);
+            if(expiries.remove(path) != null) {
+                shard.set(TTL_PREFIX + path, null);
+            }
+            if(maxEntries > 0) {
+                recent.remove(path);
+            }
+        }
+    }
+
+    /**
+     * Remove all expired values
+     * @return Count of removed values
+     */
+    int sweep() {
+        if(expiries.isEmpty()) {
+            return 0;
+        }
+
+        long now = System.currentTimeMillis();
+        List<String> expired = new ArrayList<>();
+        for(Map.Entry<String, Long> entry : expiries.entrySet()) {
+            if(entry.getValue() <= now) {
+                expired.add(entry.getKey());
+            }
+        }
+
+        int removed = 0;
+        for(String path : expired) {
+            if(removeExpired(path)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Remove value if it's still expired. Value could be set again after check
+     * @param path Path of data (pluginName-key)
+     * @return true if value was removed
+     */
+    private boolean removeExpired(String path) {
+        synchronized (lock) {
+            Long expireAt = expiries.get(path);
+            if(expireAt == null || expireAt > System.currentTimeMillis()) {
+                return false;
+            }
+            remove(path);
+            return true;
+        }
+    }
+
+    /**
+     * Move values read since last change to the end of order. Must be called with lock
+     */
+    private void drainReads() {
+        String path;
+        while ((path = reads.poll()) != null) {
+            readCount.decrementAndGet();
+            recent.get(path);
+        }
+    }
+
+    /**
+     * Remove the least recently used values when there are too many of them. Must be called with lock
+     * @return true if any value was removed
+     */
+    private boolean evict() {
+        if(maxEntries <= 0) {
+            return false;
+        }
+
+        boolean removed = false;
+        Iterator<String> iterator = recent.keySet().iterator();
+        while (recent.size() > maxEntries && iterator.hasNext()) {
+            String path = iterator.next();
+            iterator.remove();
+            shard.set(path, null);
+            if(expiries.remove(path) != null) {
+                shard.set(TTL_PREFIX + path, null);
+            }
+            removed = true;
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.cache.shard;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoding of values that can be saved in cache (the same types as PersistentDataType)
+ */
+final class CacheValueCodec {
+    private static final byte BYTE = 1;
+    private static final byte SHORT = 2;
+    private static final byte INTEGER = 3;
+    private static final byte LONG = 4;
+    private static final byte FLOAT = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte STRING = 7;
+    private static final byte BYTE_ARRAY = 8;
+    private static final byte INTEGER_ARRAY = 9;
+    private static final byte LONG_ARRAY = 10;
+
+    private CacheValueCodec() {}
+
+    /**
+     * Check if value can be encoded
+     * @param value Value to check
+     * @return true if value has supported type
+     */
+    static boolean isSupported(Object value) {
+        return value instanceof Byte || value instanceof Short || value instanceof Integer ||
+                value instanceof Long || value instanceof Float || value instanceof Double ||
+                value instanceof String || value instanceof byte[] || value instanceof int[] ||
+                value instanceof long[];
+    }
+
+    /**
+     * Write type tag and value
+     * @param out Output
+     * @param value Value with supported type
+     * @throws IOException when value can't be written
+     * @throws IllegalArgumentException when type of value isn't supported
+     */
+    static void write(DataOutput out, Object value) throws IOException {
+        if(value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if(value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if(value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if(value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if(value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if(value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if(value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if(value instanceof byte[]) {
+            byte[] array = (byte[]) value;
+            out.writeByte(BYTE_ARRAY);
+            out.writeInt(array.length);
+            out.write(array);
+        } else if(value instanceof int[]) {
+            int[] array = (int[]) value;
+            out.writeByte(INTEGER_ARRAY);
+            out.writeInt(array.length);
+            for(int i : array) {
+                out.writeInt(i);
+            }
+        } else if(value instanceof long[]) {
+            long[] array = (long[]) value;
+            out.writeByte(LONG_ARRAY);
+            out.writeInt(array.length);
+            for(long l : array) {
+                out.writeLong(l);
+            }
+        } else {
+            throw new IllegalArgumentException("You try to save wrong type!");
+        }
+    }
+
+    /**
+     * Read value written by {@link #write(DataOutput, Object)}
+     * @param in Input
+     * @return Value
+     * @throws IOException when value can't be read or type tag is unknown
+     */
+    static Object read(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case BYTE:
+                return in.readByte();
+            case SHORT:
+                return in.readShort();
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case STRING:
+                return readString(in);
+            case BYTE_ARRAY:
+                byte[] bytes = new byte[readLength(in)];
+                in.readFully(bytes);
+                return bytes;
+            case INTEGER_ARRAY:
+                int[] ints = new int[readLength(in)];
+                for(int i = 0; i < ints.length; i++) {
+                    ints[i] = in.readInt();
+                }
+                return ints;
+            case LONG_ARRAY:
+                long[] longs = new long[readLength(in)];
+                for(int i = 0; i < longs.length; i++) {
+                    longs[i] = in.readLong();
+                }
+                return longs;
+            default:
+                throw new IOException("Unknown cache value type " + type);
+        }
+    }
+
+    /**
+     * Write string as length and UTF-8 bytes
+     * @param out Output
+     * @param s String
+     * @throws IOException when string can't be written
+     */
+    static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read string written by {@link #writeString(DataOutput, String)}
+     * @param in Input
+     * @return String
+     * @throws IOException when string can't be read
+     */
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readLength(DataInput in) throws IOException {
+        int length = in.readInt();
+        if(length < 0) {
+            throw new IOException("Negative length in cache value");
+        }
+        return length;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.cache.shard;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Part of file cache that is saved in own file (server, one player or one entity)
+ * @since 2.4.9
+ */
+public interface ICacheShard {
+    /**
+     * Get value from shard
+     * @param key Key of value (pluginName-key)
+     * @return Value or null
+     */
+    @Nullable
+    Object get(String key);
+
+    /**
+     * Set value in shard. Changes are saved in {@link #save()}
+     * @param key Key of value (pluginName-key)
+     * @param value Value or null to remove it
+     */
+    void set(String key, @Nullable Object value);
+
+    /**
+     * Check if shard has unsaved changes
+     * @return true if shard should be saved
+     */
+    boolean isDirty();
+
+    /**
+     * Save shard to file if there are unsaved changes
+     * @throws IOException when file can't be saved
+     */
+    void save() throws IOException;
+
+    /**
+     * Get copy of all values in shard
+     * @return Map with key and value
+     */
+    Map<String, Object> getValues();
+
+    /**
+     * Call consumer with every key in shard. Values aren't loaded. Consumer can't change this shard
+     * @param consumer Consumer of keys
+     */
+    default void forEachKey(Consumer<String> consumer) {
+        getValues().keySet().forEach(consumer);
+    }
+
+    /**
+     * Get file of this shard
+     * @return File where shard is saved
+     */
+    File getFile();
+
+    /**
+     * Release resources of this shard. Unsaved changes aren't saved
+     * @throws IOException when resources can't be released
+     */
+    default void close() throws IOException {}
+}
@@ -0,0 +1,294 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.cache.shard;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Cache shard saved as binary append-only log.
+ * Every save appends only changed keys, and the log is compacted when it contains too many old records.
+ * Reads don't use locks
+ * @since 2.4.9
+ */
+public class LogCacheShard implements ICacheShard {
+    private static final int MAGIC = 0x4B54434C;
+    private static final int VERSION = 1;
+    private static final byte OP_SET = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int COMPACT_MIN_RECORDS = 1024;
+    private static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+    private static final Object REMOVED = new Object();
+
+    private final File file;
+    private final ConcurrentHashMap<String, Object> values;
+    private final LinkedHashMap<String, Object> pending;
+    private final Object lock = new Object();
+    private long records;
+    private boolean compact;
+    private volatile boolean dirty;
+
+    /**
+     * Load shard by replaying log from file. If file doesn't exist, shard is empty
+     * @param file File of this shard
+     * @throws IOException when file isn't a cache log
+     */
+    public LogCacheShard(File file) throws IOException {
+        this.file = file;
+        this.values = new ConcurrentHashMap<>();
+        this.pending = new LinkedHashMap<>();
+        this.records = 0;
+        this.compact = false;
+        this.dirty = false;
+
+        if(file.exists()) {
+            replay();
+        }
+    }
+
+    private void replay() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != MAGIC) {
+                throw new IOException(file.getName() + " isn't a cache log!");
+            }
+            int version = in.readInt();
+            if(version != VERSION) {
+                throw new IOException("Unsupported version of cache log: " + version);
+            }
+
+            CRC32 crc = new CRC32();
+            while (true) {
+                int first = in.read();
+                if(first < 0) {
+                    return;
+                }
+
+                byte[] payload;
+                try {
+                    int length = (first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+                    int checksum = in.readInt();
+                    if(length <= 0 || length > MAX_RECORD_LENGTH) {
+                        markBroken();
+                        return;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if((int) crc.getValue() != checksum) {
+                        markBroken();
+                        return;
+                    }
+                } catch (EOFException e) {
+                    // Last save was interrupted in the middle of record
+                    markBroken();
+                    return;
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                byte op = record.readByte();
+                String key = CacheValueCodec.readString(record);
+                if(op == OP_SET) {
+                    values.put(key, CacheValueCodec.read(record));
+                } else {
+                    values.remove(key);
+                }
+                records++;
+            }
+        } catch (EOFException e) {
+            // File is shorter than header
+            markBroken();
+        }
+    }
+
+    /**
+     * Log has broken end. It will be rewritten from memory in next save, so new records aren't appended after garbage
+     */
+    private void markBroken() {
+        compact = true;
+        dirty = true;
+    }
+
+    @Override
+    @Nullable
+    public Object get(String key) {
+        return values.get(key);
+    }
+
+    @Override
+    public void set(String key, @Nullable Object value) {
+        if(value != null && !CacheValueCodec.isSupported(value)) {
+            throw new IllegalArgumentException("You try to save wrong type!");
+        }
+        synchronized (lock) {
+            if(value == null) {
+                if(values.remove(key) == null && !pending.containsKey(key)) {
+                    return;
+                }
+                pending.put(key, REMOVED);
+            } else {
+                values.put(key, value);
+                pending.put(key, value);
+            }
+            dirty = true;
+        }
+    }
+
+    @Override
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    @Override
+    public void save() throws IOException {
+        if(!dirty) {
+            return;
+        }
+
+        Map<String, Object> changes;
+        boolean rewrite;
+        synchronized (lock) {
+            if(!dirty) {
+                return;
+            }
+            rewrite = compact || records + pending.size() > Math.max(COMPACT_MIN_RECORDS, values.size() * 2L);
+            changes = rewrite ? new HashMap<>(values) : new LinkedHashMap<>(pending);
+            pending.clear();
+            compact = false;
+            dirty = false;
+        }
+
+        try {
+            if(rewrite) {
+                rewrite(changes);
+            } else {
+                append(changes);
+            }
+        } catch (IOException e) {
+            // Failed append can leave part of record in file, so whole log is rewritten in next save
+            synchronized (lock) {
+                compact = true;
+                dirty = true;
+            }
+            throw e;
+        }
+    }
+
+    private void append(Map<String, Object> changes) throws IOException {
+        boolean newFile = !file.exists() || file.length() == 0;
+        if(newFile) {
+            File parent = file.getParentFile();
+            if(parent != null && !parent.exists()) {
+                parent.mkdirs();
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            if(newFile) {
+                writeHeader(out);
+            }
+            for(Map.Entry<String, Object> entry : changes.entrySet()) {
+                writeRecord(out, entry.getKey(), entry.getValue());
+            }
+        }
+
+        synchronized (lock) {
+            records += changes.size();
+        }
+    }
+
+    private void rewrite(Map<String, Object> snapshot) throws IOException {
+        File parent = file.getParentFile();
+        if(parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        File tempFile = new File(parent, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            writeHeader(out);
+            for(Map.Entry<String, Object> entry : snapshot.entrySet()) {
+                writeRecord(out, entry.getKey(), entry.getValue());
+            }
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        synchronized (lock) {
+            // Changes made during rewrite are still pending and will be appended in next save
+            records = snapshot.size();
+        }
+    }
+
+    private void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    private void writeRecord(DataOutputStream out, String key, Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        if(value == REMOVED) {
+            record.writeByte(OP_REMOVE);
+            CacheValueCodec.writeString(record, key);
+        } else {
+            record.writeByte(OP_SET);
+            CacheValueCodec.writeString(record, key);
+            CacheValueCodec.write(record, value);
+        }
+
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+    }
+
+    @Override
+    public Map<String, Object> getValues() {
+        return new HashMap<>(values);
+    }
+
+    @Override
+    public void forEachKey(Consumer<String> consumer) {
+        values.keySet().forEach(consumer);
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+}
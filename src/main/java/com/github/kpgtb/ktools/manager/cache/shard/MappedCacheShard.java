@@ -0,0 +1,722 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.cache.shard;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Cache shard saved in memory-mapped files.
+ * Values are stored in data file, and index file is an open-addressing hash table with offsets of values.
+ * Nothing is loaded to heap on startup and lookups read directly from mapped memory.
+ * Data file is the source of truth (removals are saved in it too), so missing or damaged index is rebuilt from it.
+ * Files are always changed in place and old mappings are released before files are resized, so it works on Windows.
+ * Many threads can read at the same time, only changes are exclusive
+ * @since 2.4.9
+ */
+public class MappedCacheShard implements ICacheShard {
+    private static final int MAGIC = 0x4B54434D;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_CAPACITY = 8;
+    private static final int HEADER_COUNT = 12;
+    private static final int HEADER_TOMBSTONES = 16;
+    private static final int HEADER_GENERATION = 20;
+    private static final int HEADER_DATA_END = 24;
+    private static final int HEADER_GARBAGE = 32;
+
+    private static final int SLOT_SIZE = 16;
+    private static final int DATA_START = 8;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int INITIAL_DATA_SIZE = 1024 * 1024;
+    private static final double MAX_LOAD = 0.7;
+
+    private static final long EMPTY = 0;
+    private static final long REMOVED = -1;
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            // Java 9+
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final File file;
+    private final File indexFile;
+    private final File compactFile;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private RandomAccessFile dataAccess;
+    private RandomAccessFile indexAccess;
+    private MappedByteBuffer data;
+    private MappedByteBuffer index;
+
+    private int capacity;
+    private int count;
+    private int tombstones;
+    private int generation;
+    private int dataEnd;
+    private long garbage;
+    private volatile boolean dirty;
+    // Guarded by lock, buffers are unmapped after close and using them would crash JVM
+    private boolean closed;
+
+    /**
+     * Open shard from files. If files don't exist, they are created
+     * @param file Data file of this shard. Index is saved next to it with .idx extension
+     * @throws IOException when files can't be opened or aren't a cache
+     */
+    public MappedCacheShard(File file) throws IOException {
+        this.file = file;
+        this.indexFile = new File(file.getParentFile(), file.getName() + ".idx");
+        this.compactFile = new File(file.getParentFile(), file.getName() + ".compact");
+        this.dirty = false;
+
+        File parent = file.getParentFile();
+        if(parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        if(file.exists()) {
+            open();
+        } else {
+            create();
+        }
+    }
+
+    private void create() throws IOException {
+        capacity = INITIAL_CAPACITY;
+        count = 0;
+        tombstones = 0;
+        generation = 0;
+        dataEnd = DATA_START;
+        garbage = 0;
+
+        dataAccess = new RandomAccessFile(file, "rw");
+        dataAccess.setLength(INITIAL_DATA_SIZE);
+        data = map(dataAccess, INITIAL_DATA_SIZE);
+        data.putInt(0, MAGIC);
+        data.putInt(4, generation);
+
+        indexAccess = new RandomAccessFile(indexFile, "rw");
+        writeIndex(capacity, new long[0]);
+        dirty = true;
+    }
+
+    private void open() throws IOException {
+        dataAccess = new RandomAccessFile(file, "rw");
+        if(compactFile.exists()) {
+            restoreCompaction();
+        }
+        if(dataAccess.length() < DATA_START) {
+            throw new IOException(file.getName() + " isn't a cache!");
+        }
+        data = map(dataAccess, dataAccess.length());
+        if(data.getInt(0) != MAGIC) {
+            throw new IOException(file.getName() + " isn't a cache!");
+        }
+        generation = data.getInt(4);
+
+        indexAccess = new RandomAccessFile(indexFile, "rw");
+        index = map(indexAccess, indexAccess.length());
+        if(!readIndexHeader()) {
+            rebuildFromData();
+            dirty = true;
+        }
+    }
+
+    /**
+     * Read header of index and check if index matches data file
+     * @return false if index is missing, damaged or from other generation of data file
+     */
+    private boolean readIndexHeader() throws IOException {
+        long length = indexAccess.length();
+        if(length < HEADER_SIZE || index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+            return false;
+        }
+
+        capacity = index.getInt(HEADER_CAPACITY);
+        count = index.getInt(HEADER_COUNT);
+        tombstones = index.getInt(HEADER_TOMBSTONES);
+        dataEnd = (int) index.getLong(HEADER_DATA_END);
+        garbage = index.getLong(HEADER_GARBAGE);
+        return index.getInt(HEADER_GENERATION) == generation && capacity > 0 && Integer.bitCount(capacity) == 1 &&
+                length >= indexSize(capacity) && dataEnd >= DATA_START && dataEnd <= data.capacity();
+    }
+
+    /**
+     * Create index from records in data file. Later records replace earlier records with the same key
+     */
+    private void rebuildFromData() throws IOException {
+        Map<String, Integer> offsets = new HashMap<>();
+        garbage = 0;
+        int position = DATA_START;
+        int limit = data.capacity();
+        while (position + 8 <= limit) {
+            int size = data.getInt(position);
+            int keyLength = data.getInt(position + 4);
+            // End of data or record that wasn't fully saved
+            if(size < 4 || keyLength < 0 || keyLength > size - 4 || (long) position + 4 + size > limit) {
+                break;
+            }
+
+            String key = readKey(position);
+            boolean removal = size == 4 + keyLength;
+            Integer previous = removal ? offsets.remove(key) : offsets.put(key, position);
+            if(previous != null) {
+                garbage += recordSize(previous);
+            }
+            if(removal) {
+                garbage += size + 4;
+            }
+            position += size + 4;
+        }
+
+        dataEnd = position;
+        count = offsets.size();
+        int newCapacity = INITIAL_CAPACITY;
+        while (count > newCapacity * MAX_LOAD / 2) {
+            newCapacity *= 2;
+        }
+
+        long[] entries = new long[count * 2];
+        int i = 0;
+        for(Map.Entry<String, Integer> entry : offsets.entrySet()) {
+            entries[i++] = hash(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            entries[i++] = entry.getValue();
+        }
+        writeIndex(newCapacity, entries);
+    }
+
+    @Override
+    @Nullable
+    public Object get(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(keyBytes);
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            int slot = findSlot(keyBytes, hash);
+            if(slot < 0) {
+                return null;
+            }
+            try {
+                return readValue((int) index.getLong(slotPosition(slot) + 8));
+            } catch (IOException e) {
+                throw new IllegalStateException("Damaged value of " + key + " in " + file.getName(), e);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void set(String key, @Nullable Object value) {
+        if(value != null && !CacheValueCodec.isSupported(value)) {
+            throw new IllegalArgumentException("You try to save wrong type!");
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(keyBytes);
+        try {
+            byte[] record = value == null ? null : encodeRecord(keyBytes, value);
+            lock.writeLock().lock();
+            try {
+                checkOpen();
+                int slot = findSlot(keyBytes, hash);
+                if(record == null) {
+                    if(slot < 0) {
+                        return;
+                    }
+                    // Removal is saved in data file, so it isn't lost when index is rebuilt
+                    byte[] removal = encodeRemoval(keyBytes);
+                    append(removal);
+                    int position = slotPosition(slot);
+                    garbage += recordSize((int) index.getLong(position + 8)) + removal.length;
+                    index.putLong(position + 8, REMOVED);
+                    count--;
+                    tombstones++;
+                } else {
+                    int offset = append(record);
+                    if(slot >= 0) {
+                        int position = slotPosition(slot);
+                        garbage += recordSize((int) index.getLong(position + 8));
+                        index.putLong(position + 8, offset);
+                    } else {
+                        if(count + tombstones + 1 > capacity * MAX_LOAD) {
+                            rebuildIndex(count + 1 > capacity * MAX_LOAD / 2 ? capacity * 2 : capacity);
+                        }
+                        insert(hash, offset);
+                        count++;
+                    }
+                }
+                writeHeader();
+                dirty = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Error while saving " + key + " in " + file.getName(), e);
+        }
+    }
+
+    @Override
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    @Override
+    public void save() throws IOException {
+        if(!dirty) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if(garbage > dataEnd / 2 && dataEnd > INITIAL_DATA_SIZE) {
+                compact();
+            }
+            dirty = false;
+            // Flushing to disk doesn't change buffers, so readers can work during it
+            lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            data.force();
+            index.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Object> getValues() {
+        Map<String, Object> values = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            for(int slot = 0; slot < capacity; slot++) {
+                long offset = index.getLong(slotPosition(slot) + 8);
+                if(offset == EMPTY || offset == REMOVED) {
+                    continue;
+                }
+                try {
+                    values.put(readKey((int) offset), readValue((int) offset));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Damaged value in " + file.getName(), e);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return values;
+    }
+
+    @Override
+    public void forEachKey(Consumer<String> consumer) {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            for(int slot = 0; slot < capacity; slot++) {
+                long offset = index.getLong(slotPosition(slot) + 8);
+                if(offset != EMPTY && offset != REMOVED) {
+                    consumer.accept(readKey((int) offset));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            data.force();
+            index.force();
+            unmap(data);
+            unmap(index);
+            data = null;
+            index = null;
+            dataAccess.close();
+            indexAccess.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Check if shard isn't closed. It must be called with lock
+     * @throws IllegalStateException when shard is closed
+     */
+    private void checkOpen() {
+        if(closed) {
+            throw new IllegalStateException("Cache shard " + file.getName() + " is closed!");
+        }
+    }
+
+    /**
+     * Find slot with key
+     * @return Number of slot or -1 if key isn't in index
+     */
+    private int findSlot(byte[] keyBytes, long hash) {
+        int mask = capacity - 1;
+        int slot = (int) (hash & mask);
+        for(int i = 0; i < capacity; i++) {
+            int position = slotPosition(slot);
+            long offset = index.getLong(position + 8);
+            if(offset == EMPTY) {
+                return -1;
+            }
+            if(offset != REMOVED && index.getLong(position) == hash && keyEquals((int) offset, keyBytes)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(long hash, long offset) {
+        int mask = capacity - 1;
+        int slot = (int) (hash & mask);
+        while (true) {
+            int position = slotPosition(slot);
+            long current = index.getLong(position + 8);
+            if(current == EMPTY || current == REMOVED) {
+                if(current == REMOVED) {
+                    tombstones--;
+                }
+                index.putLong(position, hash);
+                index.putLong(position + 8, offset);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Create new index with specified capacity. It also removes all tombstones
+     */
+    private void rebuildIndex(int newCapacity) throws IOException {
+        writeIndex(newCapacity, liveEntries());
+    }
+
+    /**
+     * Rewrite data file with only live values and create new index for it.
+     * Live values are saved in other file first and then copied to data file, so they aren't lost if server stops
+     */
+    private void compact() throws IOException {
+        long[] entries = liveEntries();
+        int newGeneration = generation + 1;
+
+        int newEnd = DATA_START;
+        try (FileOutputStream fileOut = new FileOutputStream(compactFile);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            // Magic is written at the end, when file is complete
+            out.writeInt(0);
+            out.writeInt(newGeneration);
+            for(int i = 0; i < entries.length; i += 2) {
+                int offset = (int) entries[i + 1];
+                int size = recordSize(offset);
+                byte[] record = new byte[size];
+                ByteBuffer source = data.duplicate();
+                source.position(offset);
+                source.get(record);
+                out.write(record);
+                entries[i + 1] = newEnd;
+                newEnd += size;
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        try (RandomAccessFile compactAccess = new RandomAccessFile(compactFile, "rw")) {
+            compactAccess.writeInt(MAGIC);
+            compactAccess.getFD().sync();
+        }
+
+        // Offsets in index don't match data file until index is written again
+        index.putInt(0, 0);
+        index.force();
+        copyCompacted();
+
+        generation = newGeneration;
+        dataEnd = newEnd;
+        garbage = 0;
+        writeIndex(capacity, entries);
+    }
+
+    /**
+     * Finish compaction that was stopped by server stop. Compacted file without magic wasn't fully written, so it is removed
+     */
+    private void restoreCompaction() throws IOException {
+        boolean complete;
+        try (RandomAccessFile compactAccess = new RandomAccessFile(compactFile, "r")) {
+            complete = compactAccess.length() >= DATA_START && compactAccess.readInt() == MAGIC;
+        }
+        if(complete) {
+            copyCompacted();
+        } else {
+            Files.delete(compactFile.toPath());
+        }
+    }
+
+    /**
+     * Copy compacted file to data file and remove it
+     */
+    private void copyCompacted() throws IOException {
+        try (FileChannel source = FileChannel.open(compactFile.toPath(), StandardOpenOption.READ)) {
+            long size = source.size();
+            resizeData(0);
+            resizeData(Math.min(Integer.MAX_VALUE, Math.max(INITIAL_DATA_SIZE, size * 2)));
+            ByteBuffer target = data.duplicate();
+            target.limit((int) size);
+            while (target.hasRemaining() && source.read(target) >= 0) {
+                // Read until whole file is copied
+            }
+            data.force();
+        }
+        Files.delete(compactFile.toPath());
+    }
+
+    /**
+     * Get pairs of hash and offset of all values
+     */
+    private long[] liveEntries() {
+        long[] entries = new long[count * 2];
+        int i = 0;
+        for(int slot = 0; slot < capacity; slot++) {
+            int position = slotPosition(slot);
+            long offset = index.getLong(position + 8);
+            if(offset == EMPTY || offset == REMOVED) {
+                continue;
+            }
+            entries[i++] = index.getLong(position);
+            entries[i++] = offset;
+        }
+        return entries;
+    }
+
+    /**
+     * Write index with specified capacity and entries in place of old index
+     */
+    private void writeIndex(int newCapacity, long[] entries) throws IOException {
+        // Empty file has no magic, so index that isn't fully written is rebuilt on next start
+        resizeIndex(0);
+        resizeIndex(indexSize(newCapacity));
+
+        capacity = newCapacity;
+        tombstones = 0;
+        for(int i = 0; i < entries.length; i += 2) {
+            insert(entries[i], entries[i + 1]);
+        }
+        index.putInt(4, VERSION);
+        writeHeader();
+        index.putInt(0, MAGIC);
+    }
+
+    /**
+     * Change size of data file. Old mapping is released first, because mapped file can't be resized on Windows
+     */
+    private void resizeData(long size) throws IOException {
+        MappedByteBuffer old = data;
+        data = null;
+        unmap(old);
+        try {
+            dataAccess.setLength(size);
+        } finally {
+            data = map(dataAccess, dataAccess.length());
+        }
+    }
+
+    /**
+     * Change size of index file. Old mapping is released first, because mapped file can't be resized on Windows
+     */
+    private void resizeIndex(long size) throws IOException {
+        MappedByteBuffer old = index;
+        index = null;
+        unmap(old);
+        try {
+            indexAccess.setLength(size);
+        } finally {
+            index = map(indexAccess, indexAccess.length());
+        }
+    }
+
+    private int append(byte[] record) throws IOException {
+        long required = (long) dataEnd + record.length;
+        if(required > Integer.MAX_VALUE) {
+            throw new IOException(file.getName() + " is too big!");
+        }
+        if(required > data.capacity()) {
+            resizeData(Math.min(Integer.MAX_VALUE, Math.max(data.capacity() * 2L, required)));
+        }
+
+        int offset = dataEnd;
+        ByteBuffer target = data.duplicate();
+        target.position(offset);
+        target.put(record);
+        dataEnd += record.length;
+        return offset;
+    }
+
+    private byte[] encodeRecord(byte[] keyBytes, Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(keyBytes.length);
+        out.write(keyBytes);
+        CacheValueCodec.write(out, value);
+
+        byte[] record = bytes.toByteArray();
+        ByteBuffer.wrap(record).putInt(0, record.length - 4);
+        return record;
+    }
+
+    private static byte[] encodeRemoval(byte[] keyBytes) {
+        ByteBuffer record = ByteBuffer.allocate(8 + keyBytes.length);
+        record.putInt(4 + keyBytes.length);
+        record.putInt(keyBytes.length);
+        record.put(keyBytes);
+        return record.array();
+    }
+
+    private int recordSize(int offset) {
+        return data.getInt(offset) + 4;
+    }
+
+    private boolean keyEquals(int offset, byte[] keyBytes) {
+        if(data.getInt(offset + 4) != keyBytes.length) {
+            return false;
+        }
+        int start = offset + 8;
+        for(int i = 0; i < keyBytes.length; i++) {
+            if(data.get(start + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readKey(int offset) {
+        byte[] keyBytes = new byte[data.getInt(offset + 4)];
+        ByteBuffer source = data.duplicate();
+        source.position(offset + 8);
+        source.get(keyBytes);
+        return new String(keyBytes, StandardCharsets.UTF_8);
+    }
+
+    private Object readValue(int offset) throws IOException {
+        int keyLength = data.getInt(offset + 4);
+        byte[] valueBytes = new byte[data.getInt(offset) - 4 - keyLength];
+        ByteBuffer source = data.duplicate();
+        source.position(offset + 8 + keyLength);
+        source.get(valueBytes);
+        return CacheValueCodec.read(new DataInputStream(new ByteArrayInputStream(valueBytes)));
+    }
+
+    private void writeHeader() {
+        index.putInt(HEADER_CAPACITY, capacity);
+        index.putInt(HEADER_COUNT, count);
+        index.putInt(HEADER_TOMBSTONES, tombstones);
+        index.putInt(HEADER_GENERATION, generation);
+        index.putLong(HEADER_DATA_END, dataEnd);
+        index.putLong(HEADER_GARBAGE, garbage);
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static long indexSize(int capacity) {
+        return HEADER_SIZE + (long) capacity * SLOT_SIZE;
+    }
+
+    private static MappedByteBuffer map(RandomAccessFile access, long size) throws IOException {
+        return access.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * Release mapped memory now instead of waiting for GC. Buffer can't be used after it
+     */
+    private static void unmap(@Nullable MappedByteBuffer buffer) {
+        if(buffer == null || INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // Mapping is released by GC
+        }
+    }
+
+    /**
+     * FNV-1a hash of key. 0 is never returned
+     */
+    private static long hash(byte[] keyBytes) {
+        long hash = 0xcbf29ce484222325L;
+        for(byte b : keyBytes) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.cache.shard;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Cache shard saved as YAML file.
+ * Values are kept in concurrent map, so they can be read and changed from any thread without locks.
+ * YAML is created only in save
+ * @since 2.4.9
+ */
+public class YamlCacheShard implements ICacheShard {
+    private final File file;
+    private final ConcurrentHashMap<String, Object> values;
+    private final Object saveLock = new Object();
+    private volatile boolean dirty;
+
+    /**
+     * Load shard from file. If file doesn't exist, shard is empty
+     * @param file File of this shard
+     */
+    public YamlCacheShard(File file) {
+        this.file = file;
+        this.values = new ConcurrentHashMap<>();
+        this.dirty = false;
+
+        if(file.exists()) {
+            FileConfiguration configuration = YamlConfiguration.loadConfiguration(file);
+            for(String path : configuration.getKeys(true)) {
+                if(configuration.isConfigurationSection(path)) {
+                    continue;
+                }
+                Object value = configuration.get(path);
+                if(value != null) {
+                    values.put(path, value);
+                }
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    public Object get(String path) {
+        return values.get(path);
+    }
+
+    @Override
+    public void set(String path, @Nullable Object value) {
+        if(value == null) {
+            if(values.remove(path) == null) {
+                return;
+            }
+        } else {
+            values.put(path, value);
+        }
+        // Flag is set after change, so save that has already cleared it will be done again
+        dirty = true;
+    }
+
+    @Override
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    @Override
+    public void save() throws IOException {
+        if(!dirty) {
+            return;
+        }
+
+        synchronized (saveLock) {
+            if(!dirty) {
+                return;
+            }
+            dirty = false;
+
+            try {
+                write();
+            } catch (IOException e) {
+                dirty = true;
+                throw e;
+            }
+        }
+    }
+
+    private void write() throws IOException {
+        FileConfiguration configuration = new YamlConfiguration();
+        for(Map.Entry<String, Object> entry : values.entrySet()) {
+            configuration.set(entry.getKey(), entry.getValue());
+        }
+        if(configuration.getKeys(false).isEmpty()) {
+            Files.deleteIfExists(file.toPath());
+            return;
+        }
+        String content = configuration.saveToString();
+
+        File parent = file.getParentFile();
+        if(parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File tempFile = new File(parent, file.getName() + ".tmp");
+        Files.write(tempFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public Map<String, Object> getValues() {
+        return new HashMap<>(values);
+    }
+
+    @Override
+    public void forEachKey(Consumer<String> consumer) {
+        values.keySet().forEach(consumer);
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.data;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.PreparedQuery;
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Async version of OrmLite DAO. Every operation is executed in database threads of {@link DataManager}
+ * and returns CompletableFuture, so server's main thread isn't blocked by database.
+ * Use {@link #sync()} to get results in main thread
+ * @since 2.4.9
+ */
+public class AsyncDao<T,ID> {
+    private final Dao<T,ID> dao;
+    private final @Nullable SharedDao<T,ID> sharedDao;
+    private final Executor databaseExecutor;
+    private final Executor mainThreadExecutor;
+    private final @Nullable Executor callbackExecutor;
+
+    /**
+     * Constructor of AsyncDao. Use {@link DataManager#getAsyncDao(Class, Class)}
+     * @param dao OrmLite DAO
+     * @param sharedDao SharedDao of table that is used for writes or null
+     * @param databaseExecutor Executor with database threads
+     * @param mainThreadExecutor Executor of server's main thread
+     * @param sync true if results should be completed in main thread
+     */
+    AsyncDao(Dao<T,ID> dao, @Nullable SharedDao<T,ID> sharedDao, Executor databaseExecutor, Executor mainThreadExecutor, boolean sync) {
+        this.dao = dao;
+        this.sharedDao = sharedDao;
+        this.databaseExecutor = databaseExecutor;
+        this.mainThreadExecutor = mainThreadExecutor;
+        this.callbackExecutor = sync ? mainThreadExecutor : null;
+    }
+
+    /**
+     * Execute own action with DAO in database thread.
+     * Changes made here aren't sent to other servers, so use {@link SharedDao#invalidate(Object)} after them when shared cache is enabled
+     * @param action Action that uses DAO
+     * @return Future with result of action
+     */
+    public <R> CompletableFuture<R> execute(IDaoAction<T,ID,R> action) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        try {
+            databaseExecutor.execute(() -> {
+                try {
+                    future.complete(action.apply(dao));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+
+        if(callbackExecutor == null) {
+            return future;
+        }
+        MainThreadFuture<R> mainThreadFuture = new MainThreadFuture<>(null, future);
+        future.whenComplete((result, error) -> callbackExecutor.execute(() -> mainThreadFuture.completeFrom(result, error)));
+        return mainThreadFuture;
+    }
+
+    public CompletableFuture<T> queryForId(ID id) {
+        return execute(dao -> dao.queryForId(id));
+    }
+
+    public CompletableFuture<List<T>> queryForAll() {
+        return execute(Dao::queryForAll);
+    }
+
+    public CompletableFuture<List<T>> queryForEq(String fieldName, Object value) {
+        return execute(dao -> dao.queryForEq(fieldName, value));
+    }
+
+    public CompletableFuture<List<T>> query(PreparedQuery<T> preparedQuery) {
+        return execute(dao -> dao.query(preparedQuery));
+    }
+
+    public CompletableFuture<Boolean> idExists(ID id) {
+        return execute(dao -> dao.idExists(id));
+    }
+
+    public CompletableFuture<Long> countOf() {
+        return execute(Dao::countOf);
+    }
+
+    public CompletableFuture<Integer> create(T data) {
+        return execute(dao -> sharedDao != null ? sharedDao.create(data) : dao.create(data));
+    }
+
+    public CompletableFuture<Dao.CreateOrUpdateStatus> createOrUpdate(T data) {
+        return execute(dao -> sharedDao != null ? sharedDao.createOrUpdate(data) : dao.createOrUpdate(data));
+    }
+
+    public CompletableFuture<Integer> update(T data) {
+        return execute(dao -> sharedDao != null ? sharedDao.update(data) : dao.update(data));
+    }
+
+    public CompletableFuture<Integer> delete(T data) {
+        return execute(dao -> sharedDao != null ? sharedDao.delete(data) : dao.delete(data));
+    }
+
+    public CompletableFuture<Integer> deleteById(ID id) {
+        return execute(dao -> sharedDao != null ? sharedDao.deleteById(id) : dao.deleteById(id));
+    }
+
+    /**
+     * Get version of this DAO that completes results in server's main thread, so Bukkit API can be used in callbacks.
+     * Results and their dependent stages can be waited for (join, get) also in main thread, then they are taken directly from database thread.
+     * Stages created with thenCompose from other futures and async stages are completed by their own threads.
+     * After plugin is disabled, results are completed in database thread
+     * @return AsyncDao with results in main thread
+     */
+    public AsyncDao<T,ID> sync() {
+        if(callbackExecutor != null) {
+            return this;
+        }
+        return new AsyncDao<>(dao, sharedDao, databaseExecutor, mainThreadExecutor, true);
+    }
+
+    /**
+     * Get OrmLite DAO that is used by this AsyncDao. Its methods block current thread and changes made with it aren't sent to shared cache
+     * @return OrmLite DAO
+     */
+    public Dao<T,ID> getDao() {
+        return dao;
+    }
+
+    /**
+     * Future completed in main thread. Main thread can't complete it while it waits for it,
+     * so waiting in main thread uses result of database thread. Dependent stages (thenApply, thenAccept...)
+     * are also MainThreadFutures (Java 9+), so they can be waited for in main thread too
+     */
+    private static class MainThreadFuture<R> extends CompletableFuture<R> {
+        private final MainThreadFuture<?> root;
+        private final @Nullable CompletableFuture<R> source;
+
+        /**
+         * @param root First future of chain or null if this future is the first
+         * @param source Future completed in database thread or null if this future isn't the first
+         */
+        private MainThreadFuture(@Nullable MainThreadFuture<?> root, @Nullable CompletableFuture<R> source) {
+            this.root = root != null ? root : this;
+            this.source = source;
+        }
+
+        // Called by CompletableFuture since Java 9 to create dependent stages
+        public <U> CompletableFuture<U> newIncompleteFuture() {
+            return new MainThreadFuture<>(root, null);
+        }
+
+        private void completeFrom(R result, Throwable error) {
+            if(error != null) {
+                completeExceptionally(error);
+            } else {
+                complete(result);
+            }
+        }
+
+        /**
+         * Complete first future of chain with result of database thread if current thread is main thread.
+         * Dependent stages that aren't async are completed with it
+         * @param timeoutNanos Max time of waiting or -1 if there isn't limit
+         */
+        private void waitForSource(long timeoutNanos) throws InterruptedException, TimeoutException {
+            if(source == null || isDone() || !Bukkit.isPrimaryThread()) {
+                return;
+            }
+            try {
+                completeFrom(timeoutNanos < 0 ? source.get() : source.get(timeoutNanos, TimeUnit.NANOSECONDS), null);
+            } catch (ExecutionException e) {
+                completeFrom(null, e.getCause());
+            } catch (CancellationException e) {
+                completeFrom(null, e);
+            }
+        }
+
+        @Override
+        public R join() {
+            try {
+                root.waitForSource(-1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            } catch (TimeoutException e) {
+                throw new CompletionException(e);
+            }
+            return super.join();
+        }
+
+        @Override
+        public R get() throws InterruptedException, ExecutionException {
+            try {
+                root.waitForSource(-1);
+            } catch (TimeoutException e) {
+                throw new ExecutionException(e);
+            }
+            return super.get();
+        }
+
+        @Override
+        public R get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            root.waitForSource(unit.toNanos(timeout));
+            return super.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Action executed with DAO in database thread
+     */
+    @FunctionalInterface
+    public interface IDaoAction<T,ID,R> {
+        R apply(Dao<T,ID> dao) throws SQLException;
+    }
+}
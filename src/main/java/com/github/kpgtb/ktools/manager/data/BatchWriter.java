@@ -0,0 +1,256 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.data;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.ObjectCache;
+import com.j256.ormlite.misc.TransactionManager;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Queue of writes to one table. Writes are saved together in one transaction when queue is full,
+ * every interval from config (data.batch) and when DataManager is closed.
+ * Many updates of the same object in one batch are saved once, with its latest state.
+ * Writes after DataManager is closed are rejected
+ * @since 2.4.9
+ */
+public class BatchWriter<T,ID> {
+    private final Dao<T,ID> dao;
+    private final @Nullable SharedDao<T,ID> sharedDao;
+    private final Executor databaseExecutor;
+    private final int batchSize;
+
+    private final Object lock = new Object();
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushQueued;
+    private List<Write<T>> pending;
+    private IdentityHashMap<T, Write<T>> pendingUpdates;
+    private boolean closed;
+
+    /**
+     * Constructor of BatchWriter. Use {@link DataManager#getBatchWriter(Class, Class)}
+     * @param dao OrmLite DAO of table
+     * @param sharedDao SharedDao of table that is informed about changes or null
+     * @param databaseExecutor Executor with database threads
+     * @param batchSize Count of writes that starts saving
+     */
+    BatchWriter(Dao<T,ID> dao, @Nullable SharedDao<T,ID> sharedDao, Executor databaseExecutor, int batchSize) {
+        this.dao = dao;
+        this.sharedDao = sharedDao;
+        this.databaseExecutor = databaseExecutor;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushQueued = new AtomicBoolean(false);
+        this.pending = new ArrayList<>();
+        this.pendingUpdates = new IdentityHashMap<>();
+    }
+
+    public CompletableFuture<Void> create(T data) {
+        return add(WriteType.CREATE, data);
+    }
+
+    public CompletableFuture<Void> createOrUpdate(T data) {
+        return add(WriteType.CREATE_OR_UPDATE, data);
+    }
+
+    public CompletableFuture<Void> update(T data) {
+        return add(WriteType.UPDATE, data);
+    }
+
+    public CompletableFuture<Void> delete(T data) {
+        return add(WriteType.DELETE, data);
+    }
+
+    private CompletableFuture<Void> add(WriteType type, T data) {
+        synchronized (lock) {
+            if(closed) {
+                throw new IllegalStateException("BatchWriter of " + dao.getTableName() + " is closed!");
+            }
+            if(type == WriteType.UPDATE || type == WriteType.CREATE_OR_UPDATE) {
+                Write<T> queued = pendingUpdates.get(data);
+                if(queued != null && queued.type == type) {
+                    return queued.future;
+                }
+            } else {
+                // Later update can't be merged with update before this write
+                pendingUpdates.remove(data);
+            }
+
+            Write<T> write = new Write<>(type, data);
+            pending.add(write);
+            if(type == WriteType.UPDATE || type == WriteType.CREATE_OR_UPDATE) {
+                pendingUpdates.put(data, write);
+            }
+            if(pending.size() >= batchSize) {
+                queueFlush();
+            }
+            return write.future;
+        }
+    }
+
+    /**
+     * Start saving in database thread if it isn't already started
+     */
+    void queueFlush() {
+        if(!flushQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            databaseExecutor.execute(() -> {
+                flushQueued.set(false);
+                flush();
+            });
+        } catch (RejectedExecutionException e) {
+            // DataManager is closed, writes are saved in close()
+            flushQueued.set(false);
+        }
+    }
+
+    /**
+     * Check if there are writes that aren't saved
+     * @return true if queue is empty
+     */
+    public boolean isEmpty() {
+        synchronized (lock) {
+            return pending.isEmpty();
+        }
+    }
+
+    /**
+     * Save all waiting writes in one transaction in current thread.
+     * If one write fails, batch is split and its parts are saved again, so only failed writes aren't saved and only their futures fail
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<Write<T>> writes;
+            synchronized (lock) {
+                if(pending.isEmpty()) {
+                    return;
+                }
+                writes = pending;
+                pending = new ArrayList<>();
+                pendingUpdates = new IdentityHashMap<>();
+            }
+            save(writes);
+        }
+    }
+
+    /**
+     * Reject next writes and save waiting writes in current thread. It's called when DataManager is closed
+     */
+    void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+        flush();
+    }
+
+    private void save(List<Write<T>> writes) {
+        try {
+            TransactionManager.callInTransaction(dao.getConnectionSource(), () -> {
+                for(Write<T> write : writes) {
+                    write.apply(dao);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            if(writes.size() > 1) {
+                // Halves are saved in own transactions until failed write is found
+                int half = writes.size() / 2;
+                save(writes.subList(0, half));
+                save(writes.subList(half, writes.size()));
+                return;
+            }
+            Write<T> write = writes.get(0);
+            removeFromCache(write.data);
+            write.future.completeExceptionally(e);
+            return;
+        }
+
+        for(Write<T> write : writes) {
+            if(sharedDao != null) {
+                sharedDao.invalidateData(write.data);
+            }
+            write.future.complete(null);
+        }
+    }
+
+    /**
+     * Object from rolled back write can be in cache
+     * @param data Object from failed write
+     */
+    private void removeFromCache(T data) {
+        ObjectCache objectCache = dao.getObjectCache();
+        if(objectCache == null) {
+            return;
+        }
+        try {
+            ID id = dao.extractId(data);
+            if(id != null) {
+                objectCache.remove(dao.getDataClass(), id);
+                return;
+            }
+        } catch (SQLException ignored) {
+
+        }
+        dao.clearObjectCache();
+    }
+
+    private enum WriteType {
+        CREATE,
+        CREATE_OR_UPDATE,
+        UPDATE,
+        DELETE
+    }
+
+    private static class Write<T> {
+        private final WriteType type;
+        private final T data;
+        private final CompletableFuture<Void> future;
+
+        private Write(WriteType type, T data) {
+            this.type = type;
+            this.data = data;
+            this.future = new CompletableFuture<>();
+        }
+
+        private <ID> void apply(Dao<T,ID> dao) throws SQLException {
+            switch (type) {
+                case CREATE:
+                    dao.create(data);
+                    break;
+                case CREATE_OR_UPDATE:
+                    dao.createOrUpdate(data);
+                    break;
+                case UPDATE:
+                    dao.update(data);
+                    break;
+                case DELETE:
+                    dao.delete(data);
+                    break;
+            }
+        }
+    }
+}
@@ -16,12 +16,19 @@
 
 package com.github.kpgtb.ktools.manager.data;
 
+import com.github.kpgtb.ktools.manager.data.persister.base.ListPersister;
+import com.github.kpgtb.ktools.manager.data.persister.base.MapPersister;
+import com.github.kpgtb.ktools.manager.data.processor.DataIndexProcessor;
+import com.github.kpgtb.ktools.manager.data.shared.ISharedCache;
+import com.github.kpgtb.ktools.manager.data.shared.LocalSharedCache;
+import com.github.kpgtb.ktools.manager.data.shared.RedisSharedCache;
 import com.github.kpgtb.ktools.manager.debug.DebugManager;
 import com.github.kpgtb.ktools.manager.debug.DebugType;
 import com.github.kpgtb.ktools.util.file.ReflectionUtil;
+import com.github.kpgtb.ktools.util.time.KTime;
 import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.db.DatabaseType;
 import com.j256.ormlite.dao.DaoManager;
-import com.j256.ormlite.dao.LruObjectCache;
 import com.j256.ormlite.field.DataPersister;
 import com.j256.ormlite.field.DataPersisterManager;
 import com.j256.ormlite.field.DatabaseField;
@@ -31,9 +38,14 @@ import com.j256.ormlite.jdbc.db.SqliteDatabaseType;
 import com.j256.ormlite.logger.LogBackendType;
 import com.j256.ormlite.logger.LoggerFactory;
 import com.j256.ormlite.table.DatabaseTable;
+import com.j256.ormlite.table.DatabaseTableConfig;
 import com.j256.ormlite.table.TableUtils;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.IllegalPluginAccessException;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
@@ -41,17 +53,47 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Data manager handles connecting with database in plugin. This manager use OrmLite!
  */
 public class DataManager {
-    private @Nullable JdbcPooledConnectionSource connectionSource;
+    private @Nullable MeteredConnectionSource connectionSource;
     private final DebugManager debug;
     private final JavaPlugin plugin;
 
     private final HashMap<Class<?>, Dao<?, ?>> daosMap;
+    private final ThreadPoolExecutor databaseExecutor;
+    private final Executor mainThreadExecutor;
+    private final ConcurrentHashMap<Class<?>, BatchWriter<?, ?>> batchWriters;
+    private final ConcurrentHashMap<Class<?>, EntityTracker<?, ?>> entityTrackers;
+    private final int batchSize;
+    private final long batchInterval;
+    private BukkitTask batchTask;
+    private final @Nullable SharedObjectCache objectCache;
+    private BukkitTask cacheSweepTask;
+    private final @Nullable ISharedCache sharedCache;
+    private final ConcurrentHashMap<Class<?>, SharedDao<?, ?>> sharedDaos;
+    private final ConcurrentHashMap<String, SharedDao<?, ?>> sharedDaosByTable;
+    private final String serverId;
+    private String sharedPrefix;
+    private long sharedExpireMillis;
 
     /**
      * Constructor of DataManager. It also handles connection to database
@@ -66,6 +108,37 @@ public class DataManager {
         this.plugin = plugin;
         this.daosMap = new HashMap<>();
 
+        int threads = Math.max(1, config.getInt("data.async.threads", 2));
+        int queueSize = Math.max(1, config.getInt("data.async.queueSize", 10000));
+        AtomicInteger threadId = new AtomicInteger();
+        this.databaseExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "KTools Database #" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.databaseExecutor.allowCoreThreadTimeOut(true);
+        this.batchWriters = new ConcurrentHashMap<>();
+        this.entityTrackers = new ConcurrentHashMap<>();
+        this.batchSize = config.getInt("data.batch.size", 500);
+        this.batchInterval = new KTime(config.getString("data.batch.interval", "1s")).getTicks();
+        this.objectCache = createObjectCache(config);
+        this.sharedDaos = new ConcurrentHashMap<>();
+        this.sharedDaosByTable = new ConcurrentHashMap<>();
+        this.serverId = UUID.randomUUID().toString();
+        this.sharedCache = createSharedCache(config);
+        this.mainThreadExecutor = runnable -> {
+            // Disabled plugin can't schedule tasks, so results are completed in current thread
+            if(Bukkit.isPrimaryThread() || !plugin.isEnabled()) {
+                runnable.run();
+                return;
+            }
+            try {
+                Bukkit.getScheduler().runTask(plugin, runnable);
+            } catch (IllegalPluginAccessException e) {
+                runnable.run();
+            }
+        };
+
         this.debug.sendInfo(DebugType.DATA, "Connecting to database...");
 
         switch (config.getString("data.type")) {
@@ -77,8 +150,12 @@ public class DataManager {
                 String password = config.getString("data.mysql.password");
 
                 String url = "jdbc:mysql://"+host+":"+port+"/" + dbName;
+                long socketTimeout = new KTime(config.getString("data.pool.socketTimeout", "30s")).getMillis();
+                if(socketTimeout > 0) {
+                    url += "?socketTimeout=" + socketTimeout;
+                }
                 try {
-                    this.connectionSource = new JdbcPooledConnectionSource(url, username,password, new MysqlDatabaseType());
+                    this.connectionSource = createConnectionSource(config, url, username, password, new MysqlDatabaseType());
                 } catch (SQLException e) {
                     this.connectionSource = null;
                     this.debug.sendWarning(DebugType.DATA, "Error while connection to MySQL");
@@ -101,9 +178,10 @@ public class DataManager {
                         return;
                     }
                 }
-                String sqliteURL = "jdbc:sqlite:" + dbFile.getAbsolutePath();
+                String sqliteURL = "jdbc:sqlite:" + dbFile.getAbsolutePath() + getSqlitePragmas(config);
                 try {
-                    this.connectionSource = new JdbcPooledConnectionSource(sqliteURL, new SqliteDatabaseType());
+                    this.connectionSource = createConnectionSource(config, sqliteURL, null, null, new SqliteDatabaseType());
+                    this.connectionSource.setSingleWriter(config.getBoolean("data.sqlite.singleWriter", true));
                 } catch (SQLException e) {
                     this.connectionSource = null;
                     this.debug.sendWarning(DebugType.DATA, "Error while connection to SQLite");
@@ -123,6 +201,137 @@ public class DataManager {
         this.debug.sendInfo(DebugType.DATA, "Connected to database");
     }
 
+    /**
+     * Get SQLite pragmas from config (data.sqlite) as parameters of JDBC url. They are set on every new connection
+     * @param config Plugin config
+     * @return Parameters of url
+     */
+    private String getSqlitePragmas(FileConfiguration config) {
+        StringBuilder pragmas = new StringBuilder();
+        if(config.getBoolean("data.sqlite.wal", true)) {
+            pragmas.append("&journal_mode=WAL");
+        }
+        String synchronous = config.getString("data.sqlite.synchronous", "NORMAL");
+        if(synchronous != null && !synchronous.isEmpty()) {
+            pragmas.append("&synchronous=").append(synchronous.toUpperCase());
+        }
+        int cacheSize = config.getInt("data.sqlite.cacheSize", 0);
+        if(cacheSize > 0) {
+            // Negative value is size in KiB, not count of pages
+            pragmas.append("&cache_size=-").append(cacheSize);
+        }
+        long mmapSize = config.getLong("data.sqlite.mmapSize", 0L);
+        if(mmapSize > 0) {
+            pragmas.append("&mmap_size=").append(mmapSize * 1024L * 1024L);
+        }
+        long busyTimeout = new KTime(config.getString("data.sqlite.busyTimeout", "5s")).getMillis();
+        if(busyTimeout > 0) {
+            pragmas.append("&busy_timeout=").append(busyTimeout);
+        }
+
+        if(pragmas.length() == 0) {
+            return "";
+        }
+        return "?" + pragmas.substring(1);
+    }
+
+    /**
+     * Create pool of connections with options from config (data.pool)
+     * @param config Plugin config
+     * @param url JDBC url
+     * @param username Username or null
+     * @param password Password or null
+     * @param databaseType Type of database
+     * @return Connection source
+     * @throws SQLException when url is wrong
+     */
+    private MeteredConnectionSource createConnectionSource(FileConfiguration config, String url, @Nullable String username, @Nullable String password, DatabaseType databaseType) throws SQLException {
+        int maxConnections = config.getInt("data.pool.maxConnections", 10);
+        long connectionTimeout = new KTime(config.getString("data.pool.connectionTimeout", "10s")).getMillis();
+
+        MeteredConnectionSource source = new MeteredConnectionSource(url, username, password, databaseType, maxConnections, connectionTimeout);
+        source.setMaxConnectionsFree(config.getInt("data.pool.maxIdle", 5));
+        long maxAge = new KTime(config.getString("data.pool.maxAge", "30m")).getMillis();
+        if(maxAge > 0) {
+            source.setMaxConnectionAgeMillis(maxAge);
+        }
+        long testInterval = new KTime(config.getString("data.pool.testInterval", "30s")).getMillis();
+        if(testInterval > 0) {
+            source.setCheckConnectionsEveryMillis(testInterval);
+        }
+        source.setTestBeforeGet(config.getBoolean("data.pool.testBeforeGet", false));
+
+        this.debug.sendInfo(DebugType.DATA, "Created connection pool (max " + source.getMaxConnections() + " connections)");
+        return source;
+    }
+
+    /**
+     * Create shared cache of DAOs with options from config (data.cache)
+     * @param config Plugin config
+     * @return Object cache or null if it is disabled
+     */
+    @Nullable
+    private SharedObjectCache createObjectCache(FileConfiguration config) {
+        if(!config.getBoolean("data.cache.enabled")) {
+            return null;
+        }
+        SharedObjectCache cache = new SharedObjectCache(
+                config.getInt("data.cache.capacity", 0),
+                new KTime(config.getString("data.cache.expireAfter", "10m")).getMillis(),
+                config.getInt("data.cache.maxEntries", 50000)
+        );
+        this.debug.sendInfo(DebugType.DATA, "Created shared object cache");
+        return cache;
+    }
+
+    /**
+     * Create cache shared by servers with options from config (data.shared)
+     * @param config Plugin config
+     * @return Shared cache or null if it is disabled
+     */
+    @Nullable
+    private ISharedCache createSharedCache(FileConfiguration config) {
+        if(!config.getBoolean("data.shared.enabled", false)) {
+            return null;
+        }
+        this.sharedPrefix = config.getString("data.shared.prefix", "ktools");
+        this.sharedExpireMillis = new KTime(config.getString("data.shared.expireAfter", "10m")).getMillis();
+
+        ISharedCache cache;
+        String type = config.getString("data.shared.type", "redis");
+        if(type.equalsIgnoreCase("local")) {
+            cache = new LocalSharedCache();
+        } else {
+            cache = new RedisSharedCache(
+                    config.getString("data.shared.host", "localhost"),
+                    config.getInt("data.shared.port", 6379),
+                    config.getString("data.shared.password", ""),
+                    config.getInt("data.shared.database", 0),
+                    plugin.getLogger()
+            );
+        }
+
+        cache.subscribe(sharedPrefix + ":invalidate", message -> {
+            String[] data = message.split(" ", 3);
+            if(data.length < 3 || data[0].equals(serverId)) {
+                return;
+            }
+            SharedDao<?,?> sharedDao = sharedDaosByTable.get(data[1]);
+            if(sharedDao != null) {
+                sharedDao.handleInvalidation(data[2]);
+            }
+        });
+        cache.addReconnectListener(() -> {
+            // Messages about changed rows could be lost, so own copies of shared rows are removed
+            this.debug.sendWarning(DebugType.DATA, "Reconnected to shared cache. Clearing cache of shared tables");
+            for(SharedDao<?,?> sharedDao : sharedDaosByTable.values()) {
+                sharedDao.getDao().clearObjectCache();
+            }
+        });
+        this.debug.sendInfo(DebugType.DATA, "Created shared cache (" + type + ")");
+        return cache;
+    }
+
     /**
      * Register all OrmLite persisters from specified package
      * @param packageName Package where are stored all persisters
@@ -133,7 +342,7 @@ public class DataManager {
             this.debug.sendWarning(DebugType.DATA, "There isn't any connection source!");
             return;
         }
-        for(Class<?> clazz : ReflectionUtil.getAllClassesInPackage(jarFile, packageName)) {
+        for(Class<?> clazz : getIndexedClasses(jarFile, packageName, DataIndexProcessor.PERSISTERS_INDEX).keySet()) {
             if(!DataPersister.class.isAssignableFrom(clazz)) {
                 continue;
             }
@@ -151,7 +360,9 @@ public class DataManager {
     }
 
     /**
-     * Register all OrmLite tables from specified package
+     * Register all OrmLite tables from specified package.
+     * Table configs are built in parallel and this method waits until all tables are ready.
+     * Tables are created concurrently only on MySQL, SQLite runs one write at once. DAOs are created one by one, because OrmLite's DaoManager is synchronized
      * @param packageName Package where are stored all tables
      * @param jarFile JAR file of this plugin
      */
@@ -160,56 +371,191 @@ public class DataManager {
             this.debug.sendWarning(DebugType.DATA, "There isn't any connection source!");
             return;
         }
-        for(Class<?> clazz : ReflectionUtil.getAllClassesInPackage(jarFile, packageName)) {
+        long start = System.nanoTime();
+
+        List<Class<?>> tables = new ArrayList<>();
+        for(Map.Entry<Class<?>, String> table : getIndexedClasses(jarFile, packageName, DataIndexProcessor.TABLES_INDEX).entrySet()) {
+            Class<?> clazz = table.getKey();
             if(clazz.getDeclaredAnnotation(DatabaseTable.class) == null) {
                 continue;
             }
             this.debug.sendInfo(DebugType.DATA, "Loading " + clazz.getSimpleName());
-            Field idField = null;
-            for(Field f : clazz.getDeclaredFields()) {
-                DatabaseField databaseField = f.getDeclaredAnnotation(DatabaseField.class);
-                if(databaseField == null) {
+            String idField = table.getValue();
+            if(idField == null) {
+                idField = findIdField(clazz);
+            }
+            if(idField == null || idField.equals(DataIndexProcessor.NO_ID)) {
+                // Like before, next tables aren't loaded. Tables found before are still created
+                this.debug.sendWarning(DebugType.DATA, clazz.getSimpleName() + " don't have ID! Cancelling!");
+                break;
+            }
+            this.debug.sendInfo(DebugType.DATA, "Loaded " + idField + " as ID");
+            tables.add(clazz);
+        }
+        if(tables.isEmpty()) {
+            return;
+        }
+
+        int threads = Math.min(tables.size(), this.connectionSource.getMaxConnections());
+        AtomicInteger threadId = new AtomicInteger();
+        ExecutorService startupExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "KTools Table Loader #" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Map<Class<?>, Future<Dao<?,?>>> futures = new LinkedHashMap<>();
+        try {
+            for(Class<?> clazz : tables) {
+                futures.put(clazz, startupExecutor.submit(() -> createDao(clazz)));
+            }
+
+            for(Map.Entry<Class<?>, Future<Dao<?,?>>> future : futures.entrySet()) {
+                Dao<?,?> dao;
+                try {
+                    dao = future.getValue().get();
+                } catch (ExecutionException e) {
+                    this.debug.sendWarning(DebugType.DATA, "Error while loading " + future.getKey().getSimpleName() + "!");
+                    e.getCause().printStackTrace();
                     continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    this.debug.sendWarning(DebugType.DATA, "Interrupted while loading tables!");
+                    return;
                 }
-                if(!databaseField.id() && !databaseField.generatedId() && databaseField.generatedIdSequence().isEmpty()) {
+                if(dao == null) {
                     continue;
                 }
-                this.debug.sendInfo(DebugType.DATA, "Loaded " + f.getName() + " as ID");
-                idField = f;
-                break;
+                setupObjectCache(future.getKey(), dao);
+                this.daosMap.put(future.getKey(), dao);
+                setupSharedDao(future.getKey(), dao);
             }
-            if(idField == null) {
-                this.debug.sendWarning(DebugType.DATA, "This class don't have ID! Cancelling!");
-                return;
+        } finally {
+            startupExecutor.shutdownNow();
+        }
+
+        this.debug.sendInfo(DebugType.DATA, "Loaded " + futures.size() + " tables in " + (System.nanoTime() - start) / 1_000_000L + "ms (" + threads + " threads)");
+    }
+
+    /**
+     * Create table if it doesn't exist and its DAO. It is executed in startup threads.
+     * Table config is built before DAO, so reflection over fields doesn't hold lock of DaoManager
+     * @param clazz Class with table
+     * @return DAO of table or null if there was an error
+     */
+    @Nullable
+    private <T> Dao<T,?> createDao(Class<T> clazz) {
+        long start = System.nanoTime();
+        DatabaseTableConfig<T> tableConfig;
+        Dao<T,?> dao;
+        try {
+            tableConfig = DatabaseTableConfig.fromClass(this.connectionSource.getDatabaseType(), clazz);
+            dao = DaoManager.createDao(this.connectionSource, tableConfig);
+            // DAO created from config is cached only by config, foreign fields look it up by class
+            DaoManager.registerDao(this.connectionSource, dao);
+        } catch (SQLException e) {
+            this.debug.sendWarning(DebugType.DATA,"Error while creating DAO of " + clazz.getSimpleName() + "!");
+            e.printStackTrace();
+            return null;
+        }
+        long daoTime = System.nanoTime() - start;
+
+        try {
+            TableUtils.createTableIfNotExists(this.connectionSource, tableConfig);
+        } catch (SQLException e) {
+            this.debug.sendWarning(DebugType.DATA,"Error while creating table " + clazz.getSimpleName() + "!");
+            e.printStackTrace();
+            return null;
+        }
+        long tableTime = System.nanoTime() - start - daoTime;
+
+        this.debug.sendInfo(DebugType.DATA, "Loaded " + clazz.getSimpleName() + " (DAO " + daoTime / 1_000_000L + "ms, table " + tableTime / 1_000_000L + "ms)");
+        return dao;
+    }
+
+    private <T,Z> void setupSharedDao(Class<?> clazz, Dao<T,Z> dao) {
+        if(this.sharedCache == null) {
+            return;
+        }
+        SharedDao<T,Z> sharedDao = new SharedDao<>(dao, this.sharedCache, this.debug, this.sharedPrefix, this.sharedPrefix + ":invalidate", this.serverId, this.sharedExpireMillis);
+        this.sharedDaos.put(clazz, sharedDao);
+        this.sharedDaosByTable.put(dao.getTableName(), sharedDao);
+    }
+
+    private void setupObjectCache(Class<?> clazz, Dao<?,?> dao) {
+        if(this.objectCache == null) {
+            return;
+        }
+        ConfigurationSection tableCache = plugin.getConfig().getConfigurationSection("data.cache.tables." + dao.getTableName());
+        if(tableCache != null) {
+            this.objectCache.setTableOptions(
+                    clazz,
+                    tableCache.getInt("capacity", plugin.getConfig().getInt("data.cache.capacity", 0)),
+                    new KTime(tableCache.getString("expireAfter", plugin.getConfig().getString("data.cache.expireAfter", "10m"))).getMillis()
+            );
+        }
+        try {
+            dao.setObjectCache(this.objectCache);
+        } catch (SQLException e) {
+            this.debug.sendWarning(DebugType.DATA,"Error while setting cache of " + clazz.getSimpleName() + "!");
+            e.printStackTrace();
+            return;
+        }
+        startCacheSweepTask();
+    }
+
+    /**
+     * Get classes from index created by {@link DataIndexProcessor}. If plugin doesn't have index, package in JAR is scanned.
+     * Classes aren't initialized
+     * @param jarFile JAR file of plugin
+     * @param packageName Package with classes
+     * @param index Path of index in JAR
+     * @return Map with classes and data from index (null if JAR was scanned)
+     */
+    private Map<Class<?>, String> getIndexedClasses(File jarFile, String packageName, String index) {
+        Map<Class<?>, String> result = new LinkedHashMap<>();
+        Map<String, String> entries = ReflectionUtil.readIndex(jarFile, index);
+        if(entries == null) {
+            this.debug.sendInfo(DebugType.DATA, "There isn't " + index + " in " + jarFile.getName() + ". Scanning package " + packageName);
+            for(Class<?> clazz : ReflectionUtil.getAllClassesInPackage(jarFile, packageName, false)) {
+                result.put(clazz, null);
             }
+            return result;
+        }
 
-            try {
-                TableUtils.createTableIfNotExists(this.connectionSource, clazz);
-            } catch (SQLException e) {
-                this.debug.sendWarning(DebugType.DATA,"Error while creating table!");
-                e.printStackTrace();
+        for(Map.Entry<String, String> entry : entries.entrySet()) {
+            // Dot is required, so package "tables" doesn't match class from "tables2"
+            if(!entry.getKey().startsWith(packageName + ".")) {
+                continue;
+            }
+            Class<?> clazz = ReflectionUtil.loadClass(entry.getKey());
+            if(clazz == null) {
+                this.debug.sendWarning(DebugType.DATA, "Class " + entry.getKey() + " from " + index + " doesn't exist!");
                 continue;
             }
+            result.put(clazz, entry.getValue());
+        }
+        return result;
+    }
 
-            Dao<?,?> dao;
-            try {
-                 dao = DaoManager.createDao(this.connectionSource, clazz);
-                if(plugin.getConfig().getBoolean("data.cache.enabled")) {
-                    int capacity = plugin.getConfig().getInt("data.cache.capacity");
-                    if(capacity == 0) {
-                        dao.setObjectCache(true);
-                    } else {
-                        dao.setObjectCache(new LruObjectCache(capacity));
-                    }
-                }
-            } catch (SQLException e) {
-                this.debug.sendWarning(DebugType.DATA,"Error while creating DAO!");
-                e.printStackTrace();
+    /**
+     * Find field with ID of table
+     * @param clazz Class of table
+     * @return Name of field or null
+     */
+    @Nullable
+    private String findIdField(Class<?> clazz) {
+        for(Field f : clazz.getDeclaredFields()) {
+            DatabaseField databaseField = f.getDeclaredAnnotation(DatabaseField.class);
+            if(databaseField == null) {
                 continue;
             }
-            this.daosMap.put(clazz, dao);
-            this.debug.sendInfo(DebugType.DATA, "Loaded " + clazz.getSimpleName());
+            if(!databaseField.id() && !databaseField.generatedId() && databaseField.generatedIdSequence().isEmpty()) {
+                continue;
+            }
+            return f.getName();
         }
+        return null;
     }
 
     /**
@@ -238,12 +584,182 @@ public class DataManager {
     }
 
     /**
-     * Close connection with database
+     * Get async DAO instance of table. Its operations are executed in database threads
+     * @param daoSource Class with table
+     * @param idType Class that represents ID
+     * @return Async DAO of this table or null
+     * @since 2.4.9
+     */
+    @Nullable
+    public <T,Z> AsyncDao<T,Z> getAsyncDao(Class<T> daoSource, Class<Z> idType) {
+        Dao<T,Z> dao = getDao(daoSource, idType);
+        if(dao == null) {
+            return null;
+        }
+        return new AsyncDao<>(dao, getSharedDao(daoSource, idType), databaseExecutor, mainThreadExecutor, false);
+    }
+
+    /**
+     * Get DAO that uses cache shared by all servers in network (data.shared in config)
+     * @param daoSource Class with table
+     * @param idType Class that represents ID
+     * @return SharedDao of this table or null if shared cache is disabled
+     * @since 2.4.9
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T,Z> SharedDao<T,Z> getSharedDao(Class<T> daoSource, Class<Z> idType) {
+        if(getDao(daoSource, idType) == null) {
+            return null;
+        }
+        return (SharedDao<T, Z>) sharedDaos.get(daoSource);
+    }
+
+    /**
+     * Get cache shared by all servers in network
+     * @return Shared cache or null if it is disabled
+     * @since 2.4.9
+     */
+    @Nullable
+    public ISharedCache getSharedCache() {
+        return sharedCache;
+    }
+
+    /**
+     * Get tracker of changes in rows of table. It saves only changed columns of rows
+     * @param daoSource Class with table
+     * @param idType Class that represents ID
+     * @return EntityTracker of this table or null
+     * @since 2.4.9
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T,Z> EntityTracker<T,Z> getEntityTracker(Class<T> daoSource, Class<Z> idType) {
+        Dao<T,Z> dao = getDao(daoSource, idType);
+        if(dao == null) {
+            return null;
+        }
+        return (EntityTracker<T, Z>) entityTrackers.computeIfAbsent(daoSource, clazz -> new EntityTracker<>(dao, getSharedDao(daoSource, idType)));
+    }
+
+    /**
+     * Get reader of whole table that doesn't load all rows to memory
+     * @param daoSource Class with table
+     * @param idType Class that represents ID
+     * @return TableStream of this table or null
+     * @since 2.4.9
+     */
+    @Nullable
+    public <T,Z> TableStream<T,Z> getTableStream(Class<T> daoSource, Class<Z> idType) {
+        Dao<T,Z> dao = getDao(daoSource, idType);
+        if(dao == null) {
+            return null;
+        }
+        return new TableStream<>(dao, databaseExecutor);
+    }
+
+    /**
+     * Get queue of batched writes to table. Writes are saved together in one transaction
+     * @param daoSource Class with table
+     * @param idType Class that represents ID
+     * @return BatchWriter of this table or null
+     * @throws IllegalStateException when DataManager is closed
+     * @since 2.4.9
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T,Z> BatchWriter<T,Z> getBatchWriter(Class<T> daoSource, Class<Z> idType) {
+        Dao<T,Z> dao = getDao(daoSource, idType);
+        if(dao == null) {
+            return null;
+        }
+        if(databaseExecutor.isShutdown()) {
+            throw new IllegalStateException("DataManager is closed!");
+        }
+        startBatchTask();
+        return (BatchWriter<T, Z>) batchWriters.computeIfAbsent(daoSource, clazz -> new BatchWriter<>(dao, getSharedDao(daoSource, idType), databaseExecutor, batchSize));
+    }
+
+    private synchronized void startBatchTask() {
+        if(batchTask != null || databaseExecutor.isShutdown()) {
+            return;
+        }
+        long interval = Math.max(1L, batchInterval);
+        batchTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+            for(BatchWriter<?,?> writer : batchWriters.values()) {
+                if(!writer.isEmpty()) {
+                    writer.queueFlush();
+                }
+            }
+        }, interval, interval);
+    }
+
+    private synchronized void startCacheSweepTask() {
+        if(cacheSweepTask != null || databaseExecutor.isShutdown()) {
+            return;
+        }
+        long interval = Math.max(20L, new KTime(plugin.getConfig().getString("data.cache.sweepInterval", "1m")).getTicks());
+        cacheSweepTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, objectCache::sweep, interval, interval);
+    }
+
+    /**
+     * Get shared cache of DAOs registered in this manager
+     * @return Object cache or null if it is disabled
+     * @since 2.4.9
+     */
+    @Nullable
+    public SharedObjectCache getObjectCache() {
+        return objectCache;
+    }
+
+    /**
+     * Get executor with database threads. Count of threads and size of queue are set in config (data.async)
+     * @return Executor with database threads
+     * @since 2.4.9
+     */
+    public Executor getDatabaseExecutor() {
+        return databaseExecutor;
+    }
+
+    /**
+     * Close connection with database. Waiting async operations and batched writes are finished before, next batched writes are rejected
      */
     public void close() {
+        synchronized (this) {
+            if(batchTask != null) {
+                batchTask.cancel();
+                batchTask = null;
+            }
+            if(cacheSweepTask != null) {
+                cacheSweepTask.cancel();
+                cacheSweepTask = null;
+            }
+        }
+        databaseExecutor.shutdown();
+        try {
+            if(!databaseExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                this.debug.sendWarning(DebugType.DATA, "Database operations didn't finish in 10 seconds!");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for(BatchWriter<?,?> writer : batchWriters.values()) {
+            writer.close();
+        }
+        if(this.sharedCache != null) {
+            this.sharedCache.close();
+        }
+        GsonAdapterManager.getInstance().clearCache();
+        ListPersister.clearTypeCache(plugin.getClass().getClassLoader());
+        MapPersister.clearTypeCache(plugin.getClass().getClassLoader());
+
         if(this.connectionSource == null) {
             return;
         }
+        this.debug.sendInfo(DebugType.DATA, "Connection pool: " + this.connectionSource.getStats());
+        if(this.objectCache != null) {
+            this.debug.sendInfo(DebugType.DATA, "Object cache: " + this.objectCache.getStats());
+        }
         try {
             this.connectionSource.close();
         } catch (Exception ignored) {
@@ -255,4 +771,14 @@ public class DataManager {
     public JdbcPooledConnectionSource getConnectionSource() {
         return connectionSource;
     }
+
+    /**
+     * Get pool of connections with statistics of pool
+     * @return Connection source or null
+     * @since 2.4.9
+     */
+    @Nullable
+    public MeteredConnectionSource getMeteredConnectionSource() {
+        return connectionSource;
+    }
 }
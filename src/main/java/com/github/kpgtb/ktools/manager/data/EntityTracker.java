@@ -0,0 +1,316 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.data;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.stmt.SelectArg;
+import com.j256.ormlite.stmt.UpdateBuilder;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracker of changes in loaded rows. It saves snapshot of every tracked row and {@link #update(Object)}
+ * saves only changed columns, so big columns (lists, maps, JSON) aren't serialized and sent to database again when they didn't change.
+ * Simple columns (numbers, text, enums, UUID, dates, arrays) are compared by value.
+ * Other columns are compared by reference and hashCode without serialization, so when object is changed in place
+ * and its hashCode stays the same, mark it with {@link #markDirty(Object, String)}.
+ * Snapshots are kept until row is untracked, so call {@link #untrack(Object)} when row isn't used anymore.
+ * One row shouldn't be changed by many threads at the same time
+ * @since 2.4.9
+ */
+public class EntityTracker<T,ID> {
+    private static final Set<Class<?>> SIMPLE_TYPES = new HashSet<>(Arrays.asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+            Float.class, Double.class, BigInteger.class, BigDecimal.class, UUID.class, Date.class,
+            boolean.class, char.class, byte.class, short.class, int.class, long.class, float.class, double.class,
+            byte[].class, char[].class
+    ));
+
+    private final Dao<T,ID> dao;
+    private final @Nullable SharedDao<T,ID> sharedDao;
+    private final FieldType idField;
+    private final FieldType[] fields;
+    private final boolean[] simple;
+    private final boolean partialUpdates;
+    private final ConcurrentHashMap<Object, Snapshot> snapshots;
+
+    /**
+     * Constructor of EntityTracker. Use {@link DataManager#getEntityTracker(Class, Class)}
+     * @param dao OrmLite DAO
+     * @param sharedDao SharedDao of table that is informed about changes or null
+     */
+    EntityTracker(Dao<T,ID> dao, @Nullable SharedDao<T,ID> sharedDao) {
+        this.dao = dao;
+        this.sharedDao = sharedDao;
+        this.idField = dao.getTableInfo().getIdField();
+        this.snapshots = new ConcurrentHashMap<>();
+
+        List<FieldType> fields = new ArrayList<>();
+        boolean hasVersion = false;
+        for(FieldType fieldType : dao.getTableInfo().getFieldTypes()) {
+            if(fieldType.isVersion()) {
+                hasVersion = true;
+            }
+            if(fieldType == idField || fieldType.isForeignCollection() || fieldType.isReadOnly()) {
+                continue;
+            }
+            fields.add(fieldType);
+        }
+        this.fields = fields.toArray(new FieldType[0]);
+        this.simple = new boolean[this.fields.length];
+        for (int i = 0; i < this.fields.length; i++) {
+            Class<?> type = this.fields[i].getType();
+            this.simple[i] = type.isEnum() || SIMPLE_TYPES.contains(type);
+        }
+        // Version has to be checked and changed by OrmLite in every update
+        this.partialUpdates = idField != null && !hasVersion;
+    }
+    /**
+     * Load row and start tracking it
+     * @param id ID of row
+     * @return Row or null
+     * @throws SQLException when row can't be loaded
+     */
+    public T queryForId(ID id) throws SQLException {
+        T entity = dao.queryForId(id);
+        if(entity != null) {
+            track(entity);
+        }
+        return entity;
+    }
+
+    /**
+     * Load rows with value in column and start tracking them
+     * @param fieldName Name of column
+     * @param value Value of column
+     * @return List of rows
+     * @throws SQLException when rows can't be loaded
+     */
+    public List<T> queryForEq(String fieldName, Object value) throws SQLException {
+        List<T> entities = dao.queryForEq(fieldName, value);
+        for(T entity : entities) {
+            track(entity);
+        }
+        return entities;
+    }
+
+    /**
+     * Start tracking row. Current values are treated as saved
+     * @param entity Row loaded from database
+     * @throws SQLException when ID can't be read
+     */
+    public void track(T entity) throws SQLException {
+        if(!partialUpdates) {
+            return;
+        }
+        snapshots.put(idField.extractJavaFieldValue(entity), snapshot(entity));
+    }
+
+    /**
+     * Mark field as changed, so it is saved in next {@link #update(Object)}.
+     * It is needed when list, map or other object is changed in place and its hashCode doesn't change
+     * @param entity Tracked row
+     * @param fieldName Name of field or column
+     * @throws SQLException when ID can't be read
+     */
+    public void markDirty(T entity, String fieldName) throws SQLException {
+        int index = -1;
+        for (int i = 0; i < fields.length; i++) {
+            if(fields[i].getFieldName().equals(fieldName) || fields[i].getColumnName().equals(fieldName)) {
+                index = i;
+                break;
+            }
+        }
+        if(index == -1) {
+            throw new IllegalArgumentException("Table " + dao.getTableName() + " doesn't have field " + fieldName);
+        }
+        if(!partialUpdates) {
+            return;
+        }
+        Snapshot snapshot = snapshots.get(idField.extractJavaFieldValue(entity));
+        if(snapshot != null) {
+            snapshot.marked[index] = true;
+        }
+    }
+
+    /**
+     * Stop tracking row
+     * @param entity Tracked row
+     * @throws SQLException when ID can't be read
+     */
+    public void untrack(T entity) throws SQLException {
+        if(!partialUpdates) {
+            return;
+        }
+        snapshots.remove(idField.extractJavaFieldValue(entity));
+    }
+
+    /**
+     * Stop tracking all rows
+     */
+    public void clear() {
+        snapshots.clear();
+    }
+
+    /**
+     * Check if row is tracked
+     * @param entity Row
+     * @return true if row is tracked
+     * @throws SQLException when ID can't be read
+     */
+    public boolean isTracked(T entity) throws SQLException {
+        return partialUpdates && snapshots.containsKey(idField.extractJavaFieldValue(entity));
+    }
+
+    /**
+     * Get names of columns changed since row was loaded or saved
+     * @param entity Tracked row
+     * @return Names of changed columns. All columns if row isn't tracked
+     * @throws SQLException when values can't be read
+     */
+    public List<String> getDirtyColumns(T entity) throws SQLException {
+        List<String> result = new ArrayList<>();
+        Snapshot snapshot = partialUpdates ? snapshots.get(idField.extractJavaFieldValue(entity)) : null;
+        Snapshot current = snapshot == null ? null : snapshot(entity);
+        for (int i = 0; i < fields.length; i++) {
+            if(snapshot == null || isDirty(snapshot, current, i)) {
+                result.add(fields[i].getColumnName());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Save changed columns of row. If row isn't tracked, whole row is saved and tracking starts
+     * @param entity Row
+     * @return Count of updated rows (0 if nothing changed)
+     * @throws SQLException when row can't be saved
+     */
+    public int update(T entity) throws SQLException {
+        if(!partialUpdates) {
+            return changed(entity, dao.update(entity));
+        }
+
+        Object id = idField.extractJavaFieldValue(entity);
+        Snapshot snapshot = snapshots.get(id);
+        if(snapshot == null) {
+            int result = dao.update(entity);
+            track(entity);
+            return changed(entity, result);
+        }
+
+        Snapshot current = snapshot(entity);
+        UpdateBuilder<T,ID> update = null;
+        for (int i = 0; i < fields.length; i++) {
+            if(!isDirty(snapshot, current, i)) {
+                continue;
+            }
+            if(update == null) {
+                update = dao.updateBuilder();
+            }
+            // Values are sent as arguments, because OrmLite puts text values to query without escaping
+            update.updateColumnValue(fields[i].getColumnName(), new SelectArg((Object) fields[i].extractRawJavaFieldValue(entity)));
+        }
+        if(update == null) {
+            return 0;
+        }
+
+        update.where().eq(idField.getColumnName(), new SelectArg(id));
+        int result = update.update();
+        snapshots.put(id, current);
+        return changed(entity, result);
+    }
+
+    private int changed(T entity, int result) {
+        if(sharedDao != null && result > 0) {
+            sharedDao.invalidateData(entity);
+        }
+        return result;
+    }
+
+    /**
+     * Get OrmLite DAO that is used by this tracker
+     * @return OrmLite DAO
+     */
+    public Dao<T,ID> getDao() {
+        return dao;
+    }
+
+    private Snapshot snapshot(T entity) throws SQLException {
+        Snapshot snapshot = new Snapshot(fields.length);
+        for (int i = 0; i < fields.length; i++) {
+            Object value = fields[i].extractRawJavaFieldValue(entity);
+            if(simple[i]) {
+                snapshot.values[i] = copy(value);
+            } else {
+                // Reference and hashCode are enough to find most changes without serialization by persister
+                snapshot.values[i] = value;
+                snapshot.hashes[i] = Objects.hashCode(value);
+            }
+        }
+        return snapshot;
+    }
+
+    private boolean isDirty(Snapshot saved, Snapshot current, int index) {
+        if(saved.marked[index]) {
+            return true;
+        }
+        if(simple[index]) {
+            return !Objects.deepEquals(saved.values[index], current.values[index]);
+        }
+        return saved.values[index] != current.values[index] || saved.hashes[index] != current.hashes[index];
+    }
+
+    private static Object copy(Object value) {
+        // Arrays and dates can be changed in place, so they are copied
+        if(value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        if(value instanceof char[]) {
+            return ((char[]) value).clone();
+        }
+        if(value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        return value;
+    }
+
+    private static class Snapshot {
+        private final Object[] values;
+        private final int[] hashes;
+        private final boolean[] marked;
+
+        private Snapshot(int size) {
+            this.values = new Object[size];
+            this.hashes = new int[size];
+            this.marked = new boolean[size];
+        }
+    }
+}
@@ -19,21 +19,25 @@ package com.github.kpgtb.ktools.manager.data;
 import com.j256.ormlite.dao.BaseDaoImpl;
 import com.j256.ormlite.field.DatabaseFieldConfig;
 import com.j256.ormlite.field.FieldType;
-import com.j256.ormlite.jdbc.db.SqliteDatabaseType;
 import com.j256.ormlite.support.ConnectionSource;
 import com.j256.ormlite.table.DatabaseTableConfig;
 import org.jetbrains.annotations.ApiStatus;
 
 import java.lang.reflect.Field;
-import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
+import java.util.Collection;
 
 /**
  * Dao Implementation that resolves problem of remove getGeneratedKeys() form SQLite-JDBC
  * Use it as daoClass in @DatabaseTable
+ * Generated IDs are taken from {@link IdAllocator}, so insert is one statement
  */
 @ApiStatus.Experimental
 public class FixedDaoImpl<T,ID> extends BaseDaoImpl<T,ID> {
+    private static volatile Field fieldConfigField;
+
+    // Set in initialize(), that is called by constructor of BaseDaoImpl, so it can't have initializer
+    private IdAllocator idAllocator;
 
     public FixedDaoImpl(Class<T> dataClass) throws SQLException {
         super(dataClass);
@@ -48,39 +52,60 @@ public class FixedDaoImpl<T,ID> extends BaseDaoImpl<T,ID> {
     }
 
     @Override
-    public int create(T data) throws SQLException {
-        FieldType idField = this.tableInfo.getIdField();
+    public void initialize() throws SQLException {
+        super.initialize();
+        if(idAllocator != null) {
+            return;
+        }
 
-        try {
-            if (idField != null && idField.isGeneratedId()) {
-                if (!idField.isAllowGeneratedIdInsert()) {
-                    Field field = getField(idField.getClass(), "fieldConfig");
-                    field.setAccessible(true);
-                    DatabaseFieldConfig fieldConfig = (DatabaseFieldConfig) field.get(idField);
-                    fieldConfig.setAllowGeneratedIdInsert(true);
-                    field.setAccessible(false);
-                }
-
-                int id = 1;
-                T last = queryBuilder()
-                        .orderBy(idField.getColumnName(), false)
-                        .queryForFirst();
-
-                if (last != null) {
-                    id = idField.getFieldValueIfNotDefault(last);
-                    id++;
-                }
-                idField.assignIdValue(connectionSource, data, id, super.getObjectCache());
+        FieldType idField = this.tableInfo.getIdField();
+        if (idField == null || !idField.isGeneratedId()) {
+            return;
+        }
+        if (!idField.isAllowGeneratedIdInsert()) {
+            // Insert statement is prepared with first create, so it has to be set before
+            try {
+                DatabaseFieldConfig fieldConfig = (DatabaseFieldConfig) getFieldConfigField().get(idField);
+                fieldConfig.setAllowGeneratedIdInsert(true);
+            } catch (ReflectiveOperationException e) {
+                throw new SQLException("Can't allow insert of generated ID in table " + getTableName(), e);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
+        this.idAllocator = new IdAllocator(this, IdAllocator.DEFAULT_BLOCK_SIZE);
+    }
 
+    @Override
+    public int create(T data) throws SQLException {
+        assignId(data);
         return super.create(data);
     }
 
+    @Override
+    public int create(Collection<T> datas) throws SQLException {
+        for (T data : datas) {
+            assignId(data);
+        }
+        return super.create(datas);
+    }
+
+    private void assignId(T data) throws SQLException {
+        if (idAllocator == null || data == null) {
+            return;
+        }
+        this.tableInfo.getIdField().assignIdValue(connectionSource, data, idAllocator.nextId(), super.getObjectCache());
+    }
+
+    private static Field getFieldConfigField() throws NoSuchFieldException {
+        Field field = fieldConfigField;
+        if (field == null) {
+            field = getField(FieldType.class, "fieldConfig");
+            field.setAccessible(true);
+            fieldConfigField = field;
+        }
+        return field;
+    }
 
-    private Field getField(Class<?> clazz, String fieldName) throws NoSuchFieldException {
+    private static Field getField(Class<?> clazz, String fieldName) throws NoSuchFieldException {
         try {
             return clazz.getDeclaredField(fieldName);
         } catch (NoSuchFieldException e) {
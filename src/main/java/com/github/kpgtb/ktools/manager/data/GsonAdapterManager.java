@@ -18,25 +18,136 @@ package com.github.kpgtb.ktools.manager.data;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
 import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.lang.reflect.Type;
 
 public class GsonAdapterManager {
     private static final GsonAdapterManager INSTANCE = new GsonAdapterManager();
     private final GsonBuilder gsonBuilder;
+    private volatile Gson gson;
 
     private GsonAdapterManager() {
         gsonBuilder = new GsonBuilder();
     }
 
-    public GsonAdapterManager registerAdapter(Type clazz, TypeAdapter<?> adapter) {
+    public synchronized GsonAdapterManager registerAdapter(Type clazz, TypeAdapter<?> adapter) {
         gsonBuilder.registerTypeAdapter(clazz, adapter);
+        gson = null;
         return INSTANCE;
     }
 
+    /**
+     * Drop cached Gson with its adapters, so classes of disabled plugins aren't held. Gson is created again on next use
+     * @since 2.4.9
+     */
+    public synchronized void clearCache() {
+        gson = null;
+    }
+
+    /**
+     * Get Gson with all registered adapters. Instance is created once and created again only after registering new adapter
+     * @return Gson instance
+     */
     public Gson getGson() {
-        return gsonBuilder.create();
+        Gson result = gson;
+        if(result == null) {
+            synchronized (this) {
+                result = gson;
+                if(result == null) {
+                    result = gsonBuilder.create();
+                    gson = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get TypeAdapter of type. Gson caches adapters, so it's created once per type
+     * @param type Type of object
+     * @return TypeAdapter from Gson
+     * @since 2.4.9
+     */
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> getAdapter(Type type) {
+        return (TypeAdapter<T>) getGson().getAdapter(TypeToken.get(type));
+    }
+
+    /**
+     * Serialize object to json with cached TypeAdapter of its class
+     * @param value Object to serialize
+     * @return Json, the same as from {@link Gson#toJson(Object)}
+     * @since 2.4.9
+     */
+    public String toJson(Object value) {
+        return toJson(value, value == null ? Object.class : value.getClass());
+    }
+
+    /**
+     * Serialize object to json with cached TypeAdapter
+     * @param value Object to serialize
+     * @param type Type of object
+     * @return Json, the same as from {@link Gson#toJson(Object, Type)}
+     * @since 2.4.9
+     */
+    public String toJson(Object value, Type type) {
+        StringWriter out = new StringWriter();
+        try {
+            JsonWriter writer = getGson().newJsonWriter(out);
+            // The same settings as in Gson#toJson. HTML escaping isn't disabled in builder
+            writer.setLenient(true);
+            writer.setHtmlSafe(true);
+            getAdapter(type).write(writer, value);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Deserialize object from json with cached TypeAdapter. Json must contain exactly one value
+     * @param json Json
+     * @param type Type of object
+     * @return Object or null if json is null or empty
+     * @throws JsonSyntaxException if json is malformed or has more than one value
+     * @since 2.4.9
+     */
+    public <T> T fromJson(String json, Type type) {
+        if(json == null) {
+            return null;
+        }
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.setLenient(true);
+        boolean isEmpty = true;
+        try {
+            reader.peek();
+            isEmpty = false;
+            TypeAdapter<T> adapter = getAdapter(type);
+            T result = adapter.read(reader);
+            if(reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonSyntaxException("JSON document was not fully consumed.");
+            }
+            return result;
+        } catch (EOFException e) {
+            // Only document without any value is empty, EOF inside of value means that json is truncated
+            if(isEmpty) {
+                return null;
+            }
+            throw new JsonSyntaxException(e);
+        } catch (IllegalStateException | IOException e) {
+            throw new JsonSyntaxException(e);
+        }
     }
 
     public static GsonAdapterManager getInstance() {
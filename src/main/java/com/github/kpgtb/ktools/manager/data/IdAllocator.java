@@ -0,0 +1,204 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.data;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.db.BaseSqliteDatabaseType;
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.stmt.UpdateBuilder;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.DatabaseTable;
+import com.j256.ormlite.table.TableUtils;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Allocator of IDs for one table. It reserves blocks of IDs in table ktools_id_sequence (hi/lo),
+ * so most of IDs are taken from memory without query. Blocks are reserved with compare-and-set update,
+ * so servers with the same database don't get the same IDs.
+ * Block is never reserved in transaction of caller, because rollback would return IDs that are still used from memory.
+ * In transaction it is reserved by other thread with own connection, except SQLite (one writer, one server),
+ * where it is reserved in transaction and IDs of table are checked again in next reservation.
+ * IDs from block that weren't used before restart are skipped
+ * @since 2.4.9
+ */
+public class IdAllocator {
+    public static final int DEFAULT_BLOCK_SIZE = 100;
+    private static final int MAX_RETRIES = 10;
+
+    private final Dao<?,?> dao;
+    private final String tableName;
+    private final String maxIdQuery;
+    private final int blockSize;
+    private final Dao<IdSequence, String> sequenceDao;
+
+    private long next;
+    private long limit;
+    private boolean checkedMaxId;
+
+    /**
+     * Constructor of allocator. It creates table ktools_id_sequence if it doesn't exist
+     * @param dao DAO of table with generated ID
+     * @param blockSize Count of IDs reserved at once
+     * @throws SQLException when table of sequences can't be created
+     */
+    public IdAllocator(Dao<?,?> dao, int blockSize) throws SQLException {
+        FieldType idField = dao.getTableInfo().getIdField();
+        if(idField == null) {
+            throw new IllegalArgumentException("Table " + dao.getTableName() + " doesn't have ID");
+        }
+
+        ConnectionSource connectionSource = dao.getConnectionSource();
+        this.dao = dao;
+        this.tableName = dao.getTableName();
+        this.blockSize = Math.max(1, blockSize);
+
+        StringBuilder query = new StringBuilder("SELECT MAX(");
+        connectionSource.getDatabaseType().appendEscapedEntityName(query, idField.getColumnName());
+        query.append(") FROM ");
+        connectionSource.getDatabaseType().appendEscapedEntityName(query, tableName);
+        this.maxIdQuery = query.toString();
+
+        this.sequenceDao = DaoManager.createDao(connectionSource, IdSequence.class);
+        TableUtils.createTableIfNotExists(connectionSource, IdSequence.class);
+    }
+
+    /**
+     * Get next free ID. Thread-safe
+     * @return Next ID
+     * @throws SQLException when next block can't be reserved
+     */
+    public synchronized long nextId() throws SQLException {
+        if(next >= limit) {
+            reserveBlock();
+        }
+        return next++;
+    }
+
+    private void reserveBlock() throws SQLException {
+        ConnectionSource connectionSource = dao.getConnectionSource();
+        if(connectionSource.getSpecialConnection(tableName) == null) {
+            useBlock(reserve(checkedMaxId), true);
+            return;
+        }
+        if(connectionSource.getDatabaseType() instanceof BaseSqliteDatabaseType) {
+            // Other connection would wait for end of this transaction, because SQLite has one writer
+            useBlock(reserve(checkedMaxId), false);
+            return;
+        }
+
+        // New thread doesn't have connection of transaction, so its updates are committed at once
+        boolean checked = checkedMaxId;
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                future.complete(reserve(checked));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, "KTools-IdAllocator");
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            useBlock(future.get(), true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while reserving IDs for table " + tableName, e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Can't reserve IDs for table " + tableName, e.getCause());
+        }
+    }
+
+    /**
+     * Reserve block in sequence table with connection of current thread
+     * @param checkedMaxId false if highest ID of table should be checked
+     * @return First ID of block
+     * @throws SQLException when block can't be reserved
+     */
+    private long reserve(boolean checkedMaxId) throws SQLException {
+        for (int i = 0; i < MAX_RETRIES; i++) {
+            IdSequence sequence = sequenceDao.queryForId(tableName);
+            if(sequence == null) {
+                long start = getMaxId() + 1;
+                try {
+                    sequenceDao.create(new IdSequence(tableName, start + blockSize));
+                } catch (SQLException e) {
+                    // Created by other server in the meantime
+                    continue;
+                }
+                return start;
+            }
+
+            long start = sequence.nextId;
+            if(!checkedMaxId) {
+                // Rows with ID set by hand could be saved when this server was offline
+                start = Math.max(start, getMaxId() + 1);
+            }
+
+            UpdateBuilder<IdSequence, String> update = sequenceDao.updateBuilder();
+            update.updateColumnValue(IdSequence.NEXT_ID, start + blockSize);
+            update.where()
+                    .eq(IdSequence.TABLE_NAME, tableName)
+                    .and()
+                    .eq(IdSequence.NEXT_ID, sequence.nextId);
+            if(update.update() == 1) {
+                return start;
+            }
+        }
+        throw new SQLException("Can't reserve IDs for table " + tableName);
+    }
+
+    /**
+     * Use reserved block
+     * @param start First ID of block
+     * @param committed false if reservation can be rolled back, then highest ID of table is checked in next reservation
+     */
+    private void useBlock(long start, boolean committed) {
+        this.next = start;
+        this.limit = start + blockSize;
+        this.checkedMaxId = committed;
+    }
+
+    private long getMaxId() throws SQLException {
+        return dao.queryRawValue(maxIdQuery);
+    }
+
+    @DatabaseTable(tableName = "ktools_id_sequence")
+    static class IdSequence {
+        static final String TABLE_NAME = "table_name";
+        static final String NEXT_ID = "next_id";
+
+        @DatabaseField(id = true, columnName = TABLE_NAME)
+        private String tableName;
+        @DatabaseField(columnName = NEXT_ID, canBeNull = false)
+        private long nextId;
+
+        IdSequence() {}
+
+        IdSequence(String tableName, long nextId) {
+            this.tableName = tableName;
+            this.nextId = nextId;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.data;
+
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.jdbc.JdbcPooledConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pooled connection source with limit of open connections and statistics of pool.
+ * Connections used inside transaction are counted once.
+ * In single writer mode (SQLite) all writes use one connection, one by one, and only reads use pool
+ * @since 2.4.9
+ */
+public class MeteredConnectionSource extends JdbcPooledConnectionSource {
+    private final int maxConnections;
+    private final long connectionTimeoutMillis;
+    private final Semaphore permits;
+
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private final ReentrantLock writerLock = new ReentrantLock(true);
+    private boolean singleWriter;
+    private DatabaseConnection writerConnection;
+
+    /**
+     * Constructor of connection source
+     * @param url JDBC url
+     * @param username Username or null
+     * @param password Password or null
+     * @param databaseType Type of database
+     * @param maxConnections Max count of connections that can be used at the same time
+     * @param connectionTimeoutMillis Max time of waiting for free connection
+     * @throws SQLException when url is wrong
+     */
+    public MeteredConnectionSource(String url, String username, String password, DatabaseType databaseType, int maxConnections, long connectionTimeoutMillis) throws SQLException {
+        super(url, username, password, databaseType);
+        this.maxConnections = Math.max(1, maxConnections);
+        this.connectionTimeoutMillis = Math.max(0L, connectionTimeoutMillis);
+        this.permits = new Semaphore(this.maxConnections, true);
+    }
+
+    /**
+     * Enable or disable single writer mode. All writes use one connection, so they don't wait for lock of database file
+     * @param singleWriter true if writes should use one connection
+     */
+    public void setSingleWriter(boolean singleWriter) {
+        this.singleWriter = singleWriter;
+    }
+
+    public boolean isSingleWriter() {
+        return singleWriter;
+    }
+
+    @Override
+    public DatabaseConnection getReadOnlyConnection(String tableName) throws SQLException {
+        // Thread that writes now reads its own changes
+        if(singleWriter && writerLock.isHeldByCurrentThread() && getSavedConnection() == null) {
+            return getWriterConnection(tableName);
+        }
+        return getPooledConnection(tableName);
+    }
+
+    @Override
+    public DatabaseConnection getReadWriteConnection(String tableName) throws SQLException {
+        if(singleWriter && getSavedConnection() == null) {
+            return getWriterConnection(tableName);
+        }
+        return getPooledConnection(tableName);
+    }
+
+    private DatabaseConnection getWriterConnection(String tableName) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            if(!writerLock.tryLock(connectionTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLException("Writer connection isn't free after " + connectionTimeoutMillis + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for writer connection", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            if(writerConnection == null || writerConnection.isClosed()) {
+                // Writer connection is taken from pool once and never returned
+                writerConnection = getPooledConnection(tableName);
+            }
+            return writerConnection;
+        } catch (SQLException | RuntimeException e) {
+            writerLock.unlock();
+            throw e;
+        }
+    }
+
+    private DatabaseConnection getPooledConnection(String tableName) throws SQLException {
+        // Connection of transaction in this thread is already counted
+        if(getSavedConnection() != null) {
+            return super.getReadWriteConnection(tableName);
+        }
+
+        acquire();
+        try {
+            return super.getReadWriteConnection(tableName);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        writerLock.lock();
+        try {
+            if(writerConnection != null) {
+                DatabaseConnection connection = writerConnection;
+                writerConnection = null;
+                super.releaseConnection(connection);
+                permits.release();
+            }
+        } finally {
+            writerLock.unlock();
+        }
+        super.close();
+    }
+
+    @Override
+    public void releaseConnection(DatabaseConnection connection) throws SQLException {
+        if(isSavedConnection(connection)) {
+            super.releaseConnection(connection);
+            return;
+        }
+        if(connection == writerConnection && writerLock.isHeldByCurrentThread()) {
+            writerLock.unlock();
+            return;
+        }
+        try {
+            super.releaseConnection(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void acquire() throws SQLException {
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(connectionTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for database connection", e);
+        }
+
+        if(!acquired) {
+            timeoutCount.incrementAndGet();
+            throw new SQLException("There isn't free database connection after " + connectionTimeoutMillis + "ms (max " + maxConnections + ")");
+        }
+        recordWait(System.nanoTime() - start);
+    }
+
+    private void recordWait(long waited) {
+        acquireCount.incrementAndGet();
+        waitNanos.addAndGet(waited);
+        long max;
+        while (waited > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waited)) {
+            // Retry until max is updated
+        }
+    }
+
+    /**
+     * Get max count of connections used at the same time
+     * @return Size of pool
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Get count of connections that are used now
+     * @return Count of active connections
+     */
+    public int getActiveConnections() {
+        return maxConnections - permits.availablePermits();
+    }
+
+    /**
+     * Get count of open connections that aren't used now
+     * @return Count of idle connections
+     */
+    public int getIdleConnections() {
+        return getCurrentConnectionsFree();
+    }
+
+    /**
+     * Get count of threads that wait for free connection
+     * @return Count of waiting threads
+     */
+    public int getWaitingThreads() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Get count of connections taken from pool
+     * @return Count of taken connections
+     */
+    public long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    /**
+     * Get average time of waiting for free connection
+     * @return Average time in millis
+     */
+    public double getAverageWaitMillis() {
+        long count = acquireCount.get();
+        return count == 0 ? 0 : waitNanos.get() / 1_000_000.0 / count;
+    }
+
+    /**
+     * Get the longest time of waiting for free connection
+     * @return Time in millis
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Get count of operations that didn't get connection in time
+     * @return Count of timeouts
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Get statistics of pool as text
+     * @return Statistics of pool
+     */
+    public String getStats() {
+        return String.format(
+                "active=%d/%d idle=%d waiting=%d acquired=%d avgWait=%.2fms maxWait=%.2fms timeouts=%d opened=%d closed=%d maxUsed=%d",
+                getActiveConnections(), maxConnections, getIdleConnections(), getWaitingThreads(), getAcquireCount(),
+                getAverageWaitMillis(), getMaxWaitMillis(), getTimeoutCount(), getOpenCount(), getCloseCount(),
+                getMaxConnectionsEverUsed()
+        );
+    }
+}
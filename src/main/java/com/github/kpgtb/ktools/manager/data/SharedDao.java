@@ -0,0 +1,232 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.data;
+
+import com.github.kpgtb.ktools.manager.data.shared.ISharedCache;
+import com.github.kpgtb.ktools.manager.debug.DebugManager;
+import com.github.kpgtb.ktools.manager.debug.DebugType;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.ObjectCache;
+import com.j256.ormlite.field.FieldType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * DAO that uses cache shared by all servers in network (data.shared in config).
+ * Rows are read from own cache, then from shared cache and then from database. Shared cache is filled only after read from database.
+ * Writes replace row in shared cache with short-lived marker and send message to other servers, so they remove old row from own cache.
+ * Row read from database is saved only if key doesn't exist, so row read before change can't replace the marker of newer change.
+ * When connection for messages is lost, own cache of shared tables is cleared after reconnect.
+ * {@link AsyncDao}, {@link BatchWriter} and {@link EntityTracker} of this table do the same. Changes made with normal DAO
+ * (or {@link AsyncDao#execute(AsyncDao.IDaoAction)}) aren't visible for other servers until {@link #invalidate(Object)} is called.
+ * Methods block current thread, so use them in database thread ({@link DataManager#getDatabaseExecutor()})
+ * @since 2.4.9
+ */
+public class SharedDao<T,ID> {
+    // Value of key that was changed recently. Row read from database before change can't be saved in the meantime
+    private static final byte[] INVALIDATED = new byte[]{0};
+    private static final long INVALIDATED_MILLIS = 60000L;
+
+    private final Dao<T,ID> dao;
+    private final ISharedCache sharedCache;
+    private final DebugManager debug;
+    private final String keyPrefix;
+    private final String channel;
+    private final String serverId;
+    private final long expireMillis;
+    private final FieldType idField;
+    private final boolean cacheValues;
+
+    /**
+     * Constructor of SharedDao. Use {@link DataManager#getSharedDao(Class, Class)}
+     * @param dao OrmLite DAO
+     * @param sharedCache Shared cache
+     * @param debug Instance of DebugManager
+     * @param prefix Prefix of keys in shared cache
+     * @param channel Channel of messages about changed rows
+     * @param serverId ID of this server
+     * @param expireMillis Time after which rows are removed from shared cache (0 -> never)
+     */
+    SharedDao(Dao<T,ID> dao, ISharedCache sharedCache, DebugManager debug, String prefix, String channel, String serverId, long expireMillis) {
+        this.dao = dao;
+        this.sharedCache = sharedCache;
+        this.debug = debug;
+        this.keyPrefix = prefix + ":" + dao.getTableName() + ":";
+        this.channel = channel;
+        this.serverId = serverId;
+        this.expireMillis = expireMillis;
+        this.idField = dao.getTableInfo().getIdField();
+
+        boolean cacheValues = true;
+        for(FieldType fieldType : dao.getTableInfo().getFieldTypes()) {
+            // Foreign objects aren't saved as JSON correctly, so only messages are used
+            if(fieldType.isForeign() || fieldType.isForeignCollection()) {
+                cacheValues = false;
+                break;
+            }
+        }
+        this.cacheValues = cacheValues;
+    }
+
+    public T queryForId(ID id) throws SQLException {
+        ObjectCache objectCache = dao.getObjectCache();
+        if(objectCache != null) {
+            T cached = objectCache.get(dao.getDataClass(), id);
+            if(cached != null) {
+                return cached;
+            }
+        }
+
+        if(cacheValues) {
+            try {
+                byte[] value = sharedCache.get(key(id));
+                if(value != null && !Arrays.equals(value, INVALIDATED)) {
+                    T entity = GsonAdapterManager.getInstance().fromJson(new String(value, StandardCharsets.UTF_8), dao.getDataClass());
+                    if(entity != null) {
+                        if(objectCache != null) {
+                            objectCache.put(dao.getDataClass(), id, entity);
+                        }
+                        return entity;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                this.debug.sendWarning(DebugType.DATA, "Error while reading shared cache: " + e.getMessage());
+            }
+        }
+
+        T entity = dao.queryForId(id);
+        if(entity != null) {
+            store(id, entity);
+        }
+        return entity;
+    }
+
+    public int create(T data) throws SQLException {
+        int result = dao.create(data);
+        invalidateData(data);
+        return result;
+    }
+
+    public Dao.CreateOrUpdateStatus createOrUpdate(T data) throws SQLException {
+        Dao.CreateOrUpdateStatus result = dao.createOrUpdate(data);
+        invalidateData(data);
+        return result;
+    }
+
+    public int update(T data) throws SQLException {
+        int result = dao.update(data);
+        invalidateData(data);
+        return result;
+    }
+
+    public int delete(T data) throws SQLException {
+        int result = dao.delete(data);
+        invalidateData(data);
+        return result;
+    }
+
+    public int deleteById(ID id) throws SQLException {
+        int result = dao.deleteById(id);
+        invalidate(id);
+        return result;
+    }
+
+    /**
+     * Remove row from shared cache and from cache of all servers. Use it when row was changed without this class
+     * @param id ID of row
+     */
+    public void invalidate(ID id) {
+        if(cacheValues) {
+            try {
+                sharedCache.set(key(id), INVALIDATED, INVALIDATED_MILLIS);
+            } catch (IOException e) {
+                this.debug.sendWarning(DebugType.DATA, "Error while removing row from shared cache: " + e.getMessage());
+            }
+        }
+        publish(id);
+    }
+
+    /**
+     * Get OrmLite DAO that is used by this SharedDao
+     * @return OrmLite DAO
+     */
+    public Dao<T,ID> getDao() {
+        return dao;
+    }
+
+    /**
+     * Remove row from own cache after message from other server
+     * @param idJson ID of row as JSON
+     */
+    void handleInvalidation(String idJson) {
+        ObjectCache objectCache = dao.getObjectCache();
+        if(objectCache == null) {
+            return;
+        }
+        Object id = GsonAdapterManager.getInstance().fromJson(idJson, idField.getType());
+        if(id != null) {
+            objectCache.remove(dao.getDataClass(), id);
+        }
+    }
+
+    /**
+     * Remove changed row from shared cache and from cache of all servers.
+     * Row isn't saved in shared cache here, because other server could save newer version before it
+     * @param data Changed row
+     */
+    @SuppressWarnings("unchecked")
+    void invalidateData(T data) {
+        ID id;
+        try {
+            id = (ID) idField.extractJavaFieldValue(data);
+        } catch (SQLException e) {
+            this.debug.sendWarning(DebugType.DATA, "Error while reading ID of changed row: " + e.getMessage());
+            return;
+        }
+        if(id != null) {
+            invalidate(id);
+        }
+    }
+
+    private void store(ID id, T entity) {
+        if(!cacheValues) {
+            return;
+        }
+        try {
+            byte[] value = GsonAdapterManager.getInstance().toJson(entity, dao.getDataClass()).getBytes(StandardCharsets.UTF_8);
+            // Marker of newer change or row saved by other server isn't replaced
+            sharedCache.setIfAbsent(key(id), value, expireMillis);
+        } catch (IOException | RuntimeException e) {
+            this.debug.sendWarning(DebugType.DATA, "Error while saving row in shared cache: " + e.getMessage());
+        }
+    }
+
+    private void publish(ID id) {
+        try {
+            sharedCache.publish(channel, serverId + " " + dao.getTableName() + " " + GsonAdapterManager.getInstance().toJson(id));
+        } catch (IOException e) {
+            this.debug.sendWarning(DebugType.DATA, "Error while sending message to other servers: " + e.getMessage());
+        }
+    }
+
+    private String key(ID id) {
+        return keyPrefix + id;
+    }
+}
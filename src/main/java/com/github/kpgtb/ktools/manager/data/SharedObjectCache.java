@@ -0,0 +1,339 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.data;
+
+import com.j256.ormlite.dao.ObjectCache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Object cache shared by all DAOs of {@link DataManager}. Every table has own part with limit of objects and time of expiry.
+ * There is also global limit of objects from all tables. When it is reached, the least recently used objects of the biggest table are removed.
+ * Limits are counts of objects, not bytes. Objects are strongly referenced, so they aren't removed by garbage collector
+ * (unlike OrmLite's soft reference cache that was used when capacity was 0 before 2.4.9).
+ * It implements OrmLite's ObjectCache, so it can be set in any DAO with {@link com.j256.ormlite.dao.Dao#setObjectCache(ObjectCache)}
+ * @since 2.4.9
+ */
+public class SharedObjectCache implements ObjectCache {
+    private final ConcurrentHashMap<Class<?>, Region> regions;
+    private final ConcurrentHashMap<Class<?>, long[]> tableOptions;
+    private final int defaultCapacity;
+    private final long defaultExpireMillis;
+    private final int maxEntries;
+    private final AtomicInteger totalSize;
+
+    /**
+     * Constructor of cache
+     * @param defaultCapacity Max count of objects of one table (0 -> no limit)
+     * @param defaultExpireMillis Time after which object is removed (0 -> never)
+     * @param maxEntries Max count of objects of all tables, not size in bytes (0 -> no limit)
+     */
+    public SharedObjectCache(int defaultCapacity, long defaultExpireMillis, int maxEntries) {
+        this.regions = new ConcurrentHashMap<>();
+        this.tableOptions = new ConcurrentHashMap<>();
+        this.defaultCapacity = Math.max(0, defaultCapacity);
+        this.defaultExpireMillis = Math.max(0L, defaultExpireMillis);
+        this.maxEntries = Math.max(0, maxEntries);
+        this.totalSize = new AtomicInteger();
+    }
+
+    /**
+     * Set own options of table. It should be set before DAO of this table is used
+     * @param clazz Class of table
+     * @param capacity Max count of objects of this table (0 -> no limit)
+     * @param expireMillis Time after which object is removed (0 -> never)
+     */
+    public void setTableOptions(Class<?> clazz, int capacity, long expireMillis) {
+        tableOptions.put(clazz, new long[]{Math.max(0, capacity), Math.max(0L, expireMillis)});
+        Region region = regions.get(clazz);
+        if(region != null) {
+            region.setOptions(Math.max(0, capacity), Math.max(0L, expireMillis));
+        }
+    }
+
+    @Override
+    public <T> void registerClass(Class<T> clazz) {
+        getRegion(clazz);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, ID> T get(Class<T> clazz, ID id) {
+        Region region = regions.get(clazz);
+        if(region == null) {
+            return null;
+        }
+        return (T) region.get(id);
+    }
+
+    @Override
+    public <T, ID> void put(Class<T> clazz, ID id, T data) {
+        getRegion(clazz).put(id, data);
+        evictOverLimit();
+    }
+
+    @Override
+    public <T, ID> void remove(Class<T> clazz, ID id) {
+        Region region = regions.get(clazz);
+        if(region != null) {
+            region.remove(id);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, ID> T updateId(Class<T> clazz, ID oldId, ID newId) {
+        Region region = regions.get(clazz);
+        if(region == null) {
+            return null;
+        }
+        return (T) region.updateId(oldId, newId);
+    }
+
+    @Override
+    public <T> void clear(Class<T> clazz) {
+        Region region = regions.get(clazz);
+        if(region != null) {
+            region.clear();
+        }
+    }
+
+    @Override
+    public void clearAll() {
+        for(Region region : regions.values()) {
+            region.clear();
+        }
+    }
+
+    @Override
+    public <T> int size(Class<T> clazz) {
+        Region region = regions.get(clazz);
+        return region == null ? 0 : region.size();
+    }
+
+    @Override
+    public int sizeAll() {
+        return totalSize.get();
+    }
+
+    /**
+     * Remove expired objects from all tables. Expired objects are also removed when they are read
+     */
+    public void sweep() {
+        for(Region region : regions.values()) {
+            region.sweep();
+        }
+    }
+
+    public long getHits() {
+        return regions.values().stream().mapToLong(region -> region.hits.get()).sum();
+    }
+
+    public long getMisses() {
+        return regions.values().stream().mapToLong(region -> region.misses.get()).sum();
+    }
+
+    /**
+     * Get count of objects removed because of limits
+     * @return Count of evictions
+     */
+    public long getEvictions() {
+        return regions.values().stream().mapToLong(region -> region.evictions.get()).sum();
+    }
+
+    /**
+     * Get count of objects removed because they expired
+     * @return Count of expirations
+     */
+    public long getExpirations() {
+        return regions.values().stream().mapToLong(region -> region.expirations.get()).sum();
+    }
+
+    /**
+     * Get statistics of cache as text
+     * @return Statistics of all tables
+     */
+    public String getStats() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        StringBuilder stats = new StringBuilder(String.format(
+                "size=%d/%s hits=%d misses=%d hitRate=%.1f%% evictions=%d expirations=%d",
+                sizeAll(), maxEntries == 0 ? "unlimited" : String.valueOf(maxEntries), hits, lookups - hits,
+                lookups == 0 ? 0.0 : hits * 100.0 / lookups, getEvictions(), getExpirations()
+        ));
+        for(Map.Entry<Class<?>, Region> entry : regions.entrySet()) {
+            Region region = entry.getValue();
+            stats.append(String.format(" | %s size=%d hits=%d misses=%d evictions=%d",
+                    entry.getKey().getSimpleName(), region.size(), region.hits.get(), region.misses.get(), region.evictions.get()));
+        }
+        return stats.toString();
+    }
+
+    private Region getRegion(Class<?> clazz) {
+        return regions.computeIfAbsent(clazz, c -> {
+            long[] options = tableOptions.get(c);
+            if(options == null) {
+                return new Region(defaultCapacity, defaultExpireMillis);
+            }
+            return new Region((int) options[0], options[1]);
+        });
+    }
+
+    private void evictOverLimit() {
+        if(maxEntries == 0) {
+            return;
+        }
+        while (totalSize.get() > maxEntries) {
+            Region biggest = null;
+            int biggestSize = 0;
+            for(Region region : regions.values()) {
+                int size = region.size();
+                if(size > biggestSize) {
+                    biggest = region;
+                    biggestSize = size;
+                }
+            }
+            if(biggest == null || !biggest.evictEldest()) {
+                return;
+            }
+        }
+    }
+
+    private class Region {
+        private final LinkedHashMap<Object, Entry> entries;
+        private int capacity;
+        private long expireMillis;
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+        private final AtomicLong expirations = new AtomicLong();
+
+        private Region(int capacity, long expireMillis) {
+            this.entries = new LinkedHashMap<>(16, 0.75F, true);
+            this.capacity = capacity;
+            this.expireMillis = expireMillis;
+        }
+
+        private synchronized void setOptions(int capacity, long expireMillis) {
+            this.capacity = capacity;
+            this.expireMillis = expireMillis;
+            while (capacity > 0 && entries.size() > capacity) {
+                evictEldest();
+            }
+        }
+
+        private synchronized Object get(Object id) {
+            Entry entry = entries.get(id);
+            if(entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            if(entry.isExpired(System.currentTimeMillis())) {
+                entries.remove(id);
+                totalSize.decrementAndGet();
+                expirations.incrementAndGet();
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.data;
+        }
+
+        private synchronized void put(Object id, Object data) {
+            long expireAt = expireMillis > 0 ? System.currentTimeMillis() + expireMillis : 0L;
+            if(entries.put(id, new Entry(data, expireAt)) == null) {
+                totalSize.incrementAndGet();
+            }
+            while (capacity > 0 && entries.size() > capacity) {
+                evictEldest();
+            }
+        }
+
+        private synchronized void remove(Object id) {
+            if(entries.remove(id) != null) {
+                totalSize.decrementAndGet();
+            }
+        }
+
+        private synchronized Object updateId(Object oldId, Object newId) {
+            Entry entry = entries.remove(oldId);
+            if(entry == null) {
+                return null;
+            }
+            if(entries.put(newId, entry) != null) {
+                totalSize.decrementAndGet();
+            }
+            return entry.data;
+        }
+
+        private synchronized void clear() {
+            totalSize.addAndGet(-entries.size());
+            entries.clear();
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+
+        private synchronized boolean evictEldest() {
+            Iterator<Entry> iterator = entries.values().iterator();
+            if(!iterator.hasNext()) {
+                return false;
+            }
+            iterator.next();
+            iterator.remove();
+            totalSize.decrementAndGet();
+            evictions.incrementAndGet();
+            return true;
+        }
+
+        private synchronized void sweep() {
+            if(expireMillis == 0) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if(iterator.next().isExpired(now)) {
+                    iterator.remove();
+                    totalSize.decrementAndGet();
+                    expirations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+        private final Object data;
+        private final long expireAt;
+
+        private Entry(Object data, long expireAt) {
+            this.data = data;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expireAt != 0 && now >= expireAt;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.data;
+
+import com.j256.ormlite.dao.BaseDaoImpl;
+import com.j256.ormlite.dao.CloseableIterator;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
+import com.j256.ormlite.support.ConnectionSource;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reading of whole table without loading all rows to memory.
+ * Rows can be read in pages (sorted by ID, every page is one query) or with iterator that uses one database cursor.
+ * Read rows aren't put to object cache of table, so they don't remove often used objects from it
+ * @since 2.4.9
+ */
+public class TableStream<T,ID> {
+    private static final int STREAM_PAGE_SIZE = 500;
+
+    private final Dao<T,ID> dao;
+    private final Executor databaseExecutor;
+    private volatile Dao<T,ID> uncachedDao;
+
+    /**
+     * Constructor of TableStream. Use {@link DataManager#getTableStream(Class, Class)}
+     * @param dao OrmLite DAO
+     * @param databaseExecutor Executor with database threads
+     */
+    TableStream(Dao<T,ID> dao, Executor databaseExecutor) {
+        this.dao = dao;
+        this.databaseExecutor = databaseExecutor;
+    }
+
+    /**
+     * Read all rows in pages sorted by ID. Next page starts after ID of last row, so rows aren't skipped
+     * when table is changed between pages. Connection is used only while page is loaded
+     * @param pageSize Max count of rows in one page
+     * @param consumer Action executed with every page. Return false to stop reading
+     * @return Count of read rows
+     * @throws SQLException when page can't be loaded
+     */
+    public long forEachPage(int pageSize, IPageConsumer<T> consumer) throws SQLException {
+        FieldType idField = getIdField();
+        long limit = Math.max(1, pageSize);
+
+        long count = 0;
+        Object lastId = null;
+        while (true) {
+            List<T> page = queryPage(idField, lastId, limit);
+            if(page.isEmpty()) {
+                return count;
+            }
+            count += page.size();
+            lastId = idField.extractJavaFieldValue(page.get(page.size() - 1));
+
+            if(!consumer.accept(page) || page.size() < limit) {
+                return count;
+            }
+        }
+    }
+
+    private List<T> queryPage(FieldType idField, Object lastId, long limit) throws SQLException {
+        String idColumn = idField.getColumnName();
+        QueryBuilder<T,ID> query = getUncachedDao().queryBuilder()
+                .orderBy(idColumn, true)
+                .limit(limit);
+        if(lastId != null) {
+            // Argument, because OrmLite puts text values to query without escaping
+            query.where().gt(idColumn, new SelectArg(lastId));
+        }
+        return query.query();
+    }
+
+    private FieldType getIdField() throws SQLException {
+        FieldType idField = dao.getTableInfo().getIdField();
+        if(idField == null) {
+            throw new SQLException("Table " + dao.getTableName() + " doesn't have ID");
+        }
+        return idField;
+    }
+
+    private Dao<T,ID> getUncachedDao() throws SQLException {
+        Dao<T,ID> result = uncachedDao;
+        if(result == null) {
+            synchronized (this) {
+                result = uncachedDao;
+                if(result == null) {
+                    // Own DAO without object cache. It isn't registered in DaoManager, so other code doesn't get it
+                    result = new UncachedDao<>(dao.getConnectionSource(), dao.getDataClass());
+                    uncachedDao = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read all rows in pages in database thread
+     * @param pageSize Max count of rows in one page
+     * @param consumer Action executed with every page in database thread. Return false to stop reading
+     * @return Future with count of read rows
+     */
+    public CompletableFuture<Long> forEachPageAsync(int pageSize, IPageConsumer<T> consumer) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        try {
+            databaseExecutor.execute(() -> {
+                try {
+                    future.complete(forEachPage(pageSize, consumer));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Get iterator of all rows. It keeps one database connection until it is closed, so always close it (try-with-resources).
+     * MySQL driver loads whole result to memory before first row, so use {@link #forEachPage(int, IPageConsumer)}
+     * or {@link #stream()} for big tables there
+     * @return Iterator of rows
+     * @throws SQLException when query can't be started
+     */
+    public CloseableIterator<T> iterator() throws SQLException {
+        return getUncachedDao().iterator();
+    }
+
+    /**
+     * Get stream of all rows sorted by ID. Rows are loaded in pages like in {@link #forEachPage(int, IPageConsumer)},
+     * so memory usage is limited on every database and connection is used only while page is loaded.
+     * Errors of database are thrown as {@link IllegalStateException}
+     * @return Stream of rows
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(new PageSpliterator(), false);
+    }
+
+    /**
+     * Get OrmLite DAO that is used by this TableStream
+     * @return OrmLite DAO
+     */
+    public Dao<T,ID> getDao() {
+        return dao;
+    }
+
+    private class PageSpliterator extends Spliterators.AbstractSpliterator<T> {
+        private List<T> page = Collections.emptyList();
+        private int index;
+        private Object lastId;
+        private boolean last;
+
+        private PageSpliterator() {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if(index >= page.size()) {
+                if(last) {
+                    return false;
+                }
+                try {
+                    FieldType idField = getIdField();
+                    page = queryPage(idField, lastId, STREAM_PAGE_SIZE);
+                    index = 0;
+                    last = page.size() < STREAM_PAGE_SIZE;
+                    if(page.isEmpty()) {
+                        return false;
+                    }
+                    lastId = idField.extractJavaFieldValue(page.get(page.size() - 1));
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Can't load page of table " + dao.getTableName(), e);
+                }
+            }
+            action.accept(page.get(index++));
+            return true;
+        }
+    }
+
+    private static class UncachedDao<T,ID> extends BaseDaoImpl<T,ID> {
+        private UncachedDao(ConnectionSource connectionSource, Class<T> dataClass) throws SQLException {
+            super(connectionSource, dataClass);
+        }
+    }
+
+    /**
+     * Action executed with one page of rows
+     */
+    @FunctionalInterface
+    public interface IPageConsumer<T> {
+        boolean accept(List<T> page) throws SQLException;
+    }
+}
@@ -38,14 +38,12 @@ public class ItemStackPersister extends LongStringType {
     @Override
     public Object javaToSqlArg(FieldType fieldType, Object javaObject) throws SQLException {
         return GsonAdapterManager.getInstance()
-                .getGson()
-                .toJson(javaObject);
+                .toJson(javaObject, ItemStack.class);
     }
 
     @Override
     public Object sqlArgToJava(FieldType fieldType, Object sqlArg, int columnPos) throws SQLException {
         return GsonAdapterManager.getInstance()
-                .getGson()
                 .fromJson((String) sqlArg, ItemStack.class);
     }
 }
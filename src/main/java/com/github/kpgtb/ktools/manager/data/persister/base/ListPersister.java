@@ -27,9 +27,12 @@ import java.lang.reflect.Type;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ListPersister extends LongStringType {
     private static final ListPersister SINGLETON = new ListPersister();
+    // Kept per class loader of table, so closing DataManager of one plugin doesn't clear types of other plugins
+    private static final ConcurrentHashMap<ClassLoader, ConcurrentHashMap<String, Type>> LIST_TYPES = new ConcurrentHashMap<>();
     private final String NONE_TAG = "NONE";
 
     public ListPersister() {
@@ -40,15 +43,35 @@ public class ListPersister extends LongStringType {
         return SINGLETON;
     }
 
+    /**
+     * Remove types cached for tables of class loader, so classes of disabled plugin can be unloaded
+     * @param classLoader Class loader of plugin
+     * @since 2.4.9
+     */
+    public static void clearTypeCache(ClassLoader classLoader) {
+        LIST_TYPES.remove(classLoader);
+    }
+
+    private static ConcurrentHashMap<String, Type> getTypeCache(FieldType fieldType) {
+        ClassLoader classLoader = null;
+        if(fieldType != null && fieldType.getField() != null) {
+            classLoader = fieldType.getField().getDeclaringClass().getClassLoader();
+        }
+        if(classLoader == null) {
+            classLoader = ListPersister.class.getClassLoader();
+        }
+        return LIST_TYPES.computeIfAbsent(classLoader, loader -> new ConcurrentHashMap<>());
+    }
+
     @Override
     public Object javaToSqlArg(FieldType fieldType, Object javaObject) throws SQLException {
         List<?> list = (List<?>) javaObject;
         String clazz = NONE_TAG;
 
         if(!list.isEmpty()) {
-            clazz = CollectionUtil.getObjectTypes(list.get(0));
+            clazz = CollectionUtil.getObjectTypes(list.iterator().next());
         }
-        String json = GsonAdapterManager.getInstance().getGson()
+        String json = GsonAdapterManager.getInstance()
                 .toJson(list);
         return clazz + " " + json;
     }
@@ -65,9 +88,14 @@ public class ListPersister extends LongStringType {
         }
 
         try {
-            Type valueType = CollectionUtil.getTypesFromString(data[0])[0];
-            Type listType = TypeToken.getParameterized(List.class, valueType).getType();
-            return GsonAdapterManager.getInstance().getGson()
+            ConcurrentHashMap<String, Type> types = getTypeCache(fieldType);
+            Type listType = types.get(data[0]);
+            if(listType == null) {
+                Type valueType = CollectionUtil.getTypesFromString(data[0])[0];
+                listType = TypeToken.getParameterized(List.class, valueType).getType();
+                types.put(data[0], listType);
+            }
+            return GsonAdapterManager.getInstance()
                     .fromJson(data[1], listType);
         } catch (Exception e) {
             return new ArrayList<>();
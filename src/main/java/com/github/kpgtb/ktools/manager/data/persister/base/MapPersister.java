@@ -27,9 +27,12 @@ import java.lang.reflect.Type;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MapPersister extends LongStringType {
     private static final MapPersister SINGLETON = new MapPersister();
+    // Kept per class loader of table, so closing DataManager of one plugin doesn't clear types of other plugins
+    private static final ConcurrentHashMap<ClassLoader, ConcurrentHashMap<String, Type>> MAP_TYPES = new ConcurrentHashMap<>();
     private final String NONE_TAG = "NONE";
 
     public MapPersister() {
@@ -40,6 +43,26 @@ public class MapPersister extends LongStringType {
         return SINGLETON;
     }
 
+    /**
+     * Remove types cached for tables of class loader, so classes of disabled plugin can be unloaded
+     * @param classLoader Class loader of plugin
+     * @since 2.4.9
+     */
+    public static void clearTypeCache(ClassLoader classLoader) {
+        MAP_TYPES.remove(classLoader);
+    }
+
+    private static ConcurrentHashMap<String, Type> getTypeCache(FieldType fieldType) {
+        ClassLoader classLoader = null;
+        if(fieldType != null && fieldType.getField() != null) {
+            classLoader = fieldType.getField().getDeclaringClass().getClassLoader();
+        }
+        if(classLoader == null) {
+            classLoader = MapPersister.class.getClassLoader();
+        }
+        return MAP_TYPES.computeIfAbsent(classLoader, loader -> new ConcurrentHashMap<>());
+    }
+
     @Override
     public Object javaToSqlArg(FieldType fieldType, Object javaObject) throws SQLException {
         Map<?,?> map = (Map<?,?>) javaObject;
@@ -47,13 +70,12 @@ public class MapPersister extends LongStringType {
         String valueClazz = NONE_TAG;
 
         if(!map.isEmpty()) {
-            keyClazz = map.keySet().toArray()[0].getClass().getName();
-            valueClazz = CollectionUtil.getObjectTypes(
-                    map.values().toArray()[0]
-            );
+            Map.Entry<?,?> entry = map.entrySet().iterator().next();
+            keyClazz = entry.getKey().getClass().getName();
+            valueClazz = CollectionUtil.getObjectTypes(entry.getValue());
         }
 
-        String mapJson = GsonAdapterManager.getInstance().getGson()
+        String mapJson = GsonAdapterManager.getInstance()
                 .toJson(map);
         return keyClazz + " " + valueClazz + " " + mapJson;
     }
@@ -70,10 +92,16 @@ public class MapPersister extends LongStringType {
         }
 
         try {
-            Type keyType = Class.forName(data[0]);
-            Type valueType = CollectionUtil.getTypesFromString(data[1])[0];
-            Type mapType = TypeToken.getParameterized(Map.class, keyType, valueType).getType();
-            return GsonAdapterManager.getInstance().getGson()
+            String descriptor = data[0] + " " + data[1];
+            ConcurrentHashMap<String, Type> types = getTypeCache(fieldType);
+            Type mapType = types.get(descriptor);
+            if(mapType == null) {
+                Type keyType = Class.forName(data[0]);
+                Type valueType = CollectionUtil.getTypesFromString(data[1])[0];
+                mapType = TypeToken.getParameterized(Map.class, keyType, valueType).getType();
+                types.put(descriptor, mapType);
+            }
+            return GsonAdapterManager.getInstance()
                     .fromJson(data[2], mapType);
         } catch (Exception e) {
             e.printStackTrace();
@@ -41,7 +41,7 @@ public class GsonPersister extends LongStringType {
         if(javaObject != null) {
             clazz = javaObject.getClass().getName();
         }
-        String json = GsonAdapterManager.getInstance().getGson()
+        String json = GsonAdapterManager.getInstance()
                 .toJson(javaObject);
         return clazz + " " + json;
     }
@@ -58,7 +58,7 @@ public class GsonPersister extends LongStringType {
         }
 
         try {
-            return GsonAdapterManager.getInstance().getGson()
+            return GsonAdapterManager.getInstance()
                     .fromJson(data[1], Class.forName(data[0]));
         } catch (Exception e) {
             return null;
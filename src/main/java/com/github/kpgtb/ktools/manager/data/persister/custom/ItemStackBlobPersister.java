@@ -0,0 +1,243 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.data.persister.custom;
+
+import com.github.kpgtb.ktools.manager.data.GsonAdapterManager;
+import com.github.kpgtb.ktools.util.item.ItemUtil;
+import com.j256.ormlite.dao.CloseableIterator;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.field.SqlType;
+import com.j256.ormlite.field.types.ByteArrayType;
+import com.j256.ormlite.jdbc.db.MysqlDatabaseType;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Persister that saves ItemStack as compact binary data in BLOB column.
+ * Items without meta are saved as material and amount. Other items are saved as NBT on Paper
+ * or as compressed Bukkit serialization on Spigot.
+ * It can read values saved by {@link com.github.kpgtb.ktools.manager.data.persister.base.ItemStackPersister},
+ * so use {@link #migrateTable(Dao)} to move old tables to this format.
+ * Use it as persisterClass in @DatabaseField
+ * @since 2.4.9
+ */
+public class ItemStackBlobPersister extends ByteArrayType {
+    private static final ItemStackBlobPersister SINGLETON = new ItemStackBlobPersister();
+
+    private static final byte MAGIC = (byte) 0xB7;
+    private static final byte VERSION = 1;
+    private static final byte ENCODING_AIR = 0;
+    private static final byte ENCODING_SIMPLE = 1;
+    private static final byte ENCODING_NBT = 2;
+    private static final byte ENCODING_BUKKIT = 3;
+
+    private static final Method SERIALIZE_AS_BYTES;
+    private static final Method DESERIALIZE_BYTES;
+
+    static {
+        Method serialize = null;
+        Method deserialize = null;
+        try {
+            // Paper only
+            serialize = ItemStack.class.getMethod("serializeAsBytes");
+            deserialize = ItemStack.class.getMethod("deserializeBytes", byte[].class);
+        } catch (NoSuchMethodException ignored) {
+
+        }
+        SERIALIZE_AS_BYTES = serialize;
+        DESERIALIZE_BYTES = deserialize;
+    }
+
+    public ItemStackBlobPersister() {
+        super(SqlType.BYTE_ARRAY, new Class[]{});
+    }
+
+    public static ItemStackBlobPersister getSingleton() {
+        return SINGLETON;
+    }
+
+    @Override
+    public Object javaToSqlArg(FieldType fieldType, Object javaObject) throws SQLException {
+        try {
+            return encode((ItemStack) javaObject);
+        } catch (IOException | ReflectiveOperationException e) {
+            throw new SQLException("Error while saving ItemStack", e);
+        }
+    }
+
+    @Override
+    public Object sqlArgToJava(FieldType fieldType, Object sqlArg, int columnPos) throws SQLException {
+        byte[] data = (byte[]) sqlArg;
+        try {
+            if(data.length >= 3 && data[0] == MAGIC) {
+                return decode(data);
+            }
+            return decodeLegacy(new String(data, StandardCharsets.UTF_8).trim());
+        } catch (IOException | ReflectiveOperationException e) {
+            throw new SQLException("Error while loading ItemStack", e);
+        }
+    }
+
+    @Override
+    public boolean dataIsEqual(Object fieldObj1, Object fieldObj2) {
+        return Objects.equals(fieldObj1, fieldObj2);
+    }
+
+    @Override
+    public Class<?> getPrimaryClass() {
+        return ItemStack.class;
+    }
+
+    private byte[] encode(ItemStack item) throws IOException, ReflectiveOperationException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+
+        if(item == null || item.getType() == Material.AIR) {
+            out.writeByte(ENCODING_AIR);
+        } else if(!item.hasItemMeta()) {
+            out.writeByte(ENCODING_SIMPLE);
+            out.writeUTF(item.getType().name());
+            out.writeShort(item.getAmount());
+        } else if(SERIALIZE_AS_BYTES != null) {
+            out.writeByte(ENCODING_NBT);
+            out.write((byte[]) SERIALIZE_AS_BYTES.invoke(item));
+        } else {
+            out.writeByte(ENCODING_BUKKIT);
+            out.flush();
+            try (BukkitObjectOutputStream objectOut = new BukkitObjectOutputStream(new DeflaterOutputStream(bytes))) {
+                objectOut.writeObject(item);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private ItemStack decode(byte[] data) throws IOException, ReflectiveOperationException {
+        if(data[1] != VERSION) {
+            throw new IOException("Unknown version of saved ItemStack: " + data[1]);
+        }
+
+        switch (data[2]) {
+            case ENCODING_AIR:
+                return new ItemStack(Material.AIR);
+            case ENCODING_SIMPLE:
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 3, data.length - 3));
+                Material material = Material.valueOf(in.readUTF());
+                return new ItemStack(material, in.readShort());
+            case ENCODING_NBT:
+                if(DESERIALIZE_BYTES == null) {
+                    throw new IOException("ItemStack was saved on Paper and can't be loaded on this server");
+                }
+                byte[] nbt = new byte[data.length - 3];
+                System.arraycopy(data, 3, nbt, 0, nbt.length);
+                return (ItemStack) DESERIALIZE_BYTES.invoke(null, (Object) nbt);
+            case ENCODING_BUKKIT:
+                try (BukkitObjectInputStream objectIn = new BukkitObjectInputStream(new InflaterInputStream(new ByteArrayInputStream(data, 3, data.length - 3)))) {
+                    return (ItemStack) objectIn.readObject();
+                }
+            default:
+                throw new IOException("Unknown encoding of saved ItemStack: " + data[2]);
+        }
+    }
+
+    private ItemStack decodeLegacy(String data) throws IOException, ClassNotFoundException {
+        if(data.isEmpty()) {
+            return null;
+        }
+        // Saved by ItemStackPersister as JSON with Base64
+        if(data.startsWith("{")) {
+            return GsonAdapterManager.getInstance().fromJson(data, ItemStack.class);
+        }
+        return ItemUtil.deserializeItem(data);
+    }
+
+    /**
+     * Move table with ItemStack columns from {@link com.github.kpgtb.ktools.manager.data.persister.base.ItemStackPersister} to this persister.
+     * On MySQL, type of columns is changed to LONGBLOB. Then all rows are saved again in binary format.
+     * Fields of table should already use this persister
+     * @param dao DAO of table
+     * @return Count of saved rows
+     * @throws SQLException when table can't be changed
+     */
+    public static <T> int migrateTable(Dao<T,?> dao) throws SQLException {
+        if(dao.getConnectionSource().getDatabaseType() instanceof MysqlDatabaseType) {
+            for(FieldType fieldType : dao.getTableInfo().getFieldTypes()) {
+                if(!(fieldType.getDataPersister() instanceof ItemStackBlobPersister)) {
+                    continue;
+                }
+                StringBuilder query = new StringBuilder("ALTER TABLE ");
+                dao.getConnectionSource().getDatabaseType().appendEscapedEntityName(query, dao.getTableName());
+                query.append(" MODIFY ");
+                dao.getConnectionSource().getDatabaseType().appendEscapedEntityName(query, fieldType.getColumnName());
+                query.append(" LONGBLOB");
+                dao.executeRaw(query.toString());
+            }
+        }
+
+        int saved = 0;
+        List<T> batch = new ArrayList<>();
+        try (CloseableIterator<T> iterator = dao.closeableIterator()) {
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if(batch.size() >= 500) {
+                    saved += updateAll(dao, batch);
+                    batch.clear();
+                }
+            }
+        } catch (Exception e) {
+            throw e instanceof SQLException ? (SQLException) e : new SQLException(e);
+        }
+        saved += updateAll(dao, batch);
+        return saved;
+    }
+
+    private static <T> int updateAll(Dao<T,?> dao, List<T> rows) throws SQLException {
+        if(rows.isEmpty()) {
+            return 0;
+        }
+        try {
+            return dao.callBatchTasks(() -> {
+                int updated = 0;
+                for(T row : rows) {
+                    updated += dao.update(row);
+                }
+                return updated;
+            });
+        } catch (Exception e) {
+            throw e instanceof SQLException ? (SQLException) e : new SQLException(e);
+        }
+    }
+}
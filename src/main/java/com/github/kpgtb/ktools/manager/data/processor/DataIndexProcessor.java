@@ -0,0 +1,197 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.data.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Annotation processor that creates index of OrmLite tables and persisters while plugin is compiled.
+ * {@link com.github.kpgtb.ktools.manager.data.DataManager} reads this index instead of scanning whole JAR.
+ * It is registered as service, so it works when KTools is in classpath of compiler
+ * (or in annotationProcessorPaths, if they are set)
+ * @since 2.4.9
+ */
+public class DataIndexProcessor extends AbstractProcessor {
+    /**
+     * Resource with tables. Every line: class name and name of ID field ("-" if table doesn't have ID)
+     */
+    public static final String TABLES_INDEX = "META-INF/ktools/tables.idx";
+    /**
+     * Resource with persisters. Every line: class name
+     */
+    public static final String PERSISTERS_INDEX = "META-INF/ktools/persisters.idx";
+    public static final String NO_ID = "-";
+
+    private static final String DATABASE_TABLE = "com.j256.ormlite.table.DatabaseTable";
+    private static final String DATABASE_FIELD = "com.j256.ormlite.field.DatabaseField";
+    private static final String DATA_PERSISTER = "com.j256.ormlite.field.DataPersister";
+
+    private final Map<String, String> tables = new TreeMap<>();
+    private final Map<String, String> persisters = new TreeMap<>();
+    private final Set<String> compiled = new HashSet<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        // Persisters don't have annotation, so all classes are checked
+        return Collections.singleton("*");
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if(roundEnv.processingOver()) {
+            writeIndex(TABLES_INDEX, tables);
+            writeIndex(PERSISTERS_INDEX, persisters);
+            return false;
+        }
+
+        TypeElement persisterType = processingEnv.getElementUtils().getTypeElement(DATA_PERSISTER);
+        for(Element element : roundEnv.getRootElements()) {
+            scan(element, persisterType);
+        }
+        return false;
+    }
+
+    private void scan(Element element, TypeElement persisterType) {
+        if(element.getKind() != ElementKind.CLASS) {
+            return;
+        }
+        TypeElement type = (TypeElement) element;
+        String name = processingEnv.getElementUtils().getBinaryName(type).toString();
+        compiled.add(name);
+
+        if(getAnnotation(type, DATABASE_TABLE) != null) {
+            tables.put(name, findIdField(type));
+        }
+        if(persisterType != null && !type.getModifiers().contains(Modifier.ABSTRACT)
+                && processingEnv.getTypeUtils().isAssignable(type.asType(), processingEnv.getTypeUtils().erasure(persisterType.asType()))) {
+            persisters.put(name, "");
+        }
+
+        for(Element enclosed : type.getEnclosedElements()) {
+            if(enclosed.getModifiers().contains(Modifier.STATIC)) {
+                scan(enclosed, persisterType);
+            }
+        }
+    }
+
+    private String findIdField(TypeElement type) {
+        for(Element enclosed : type.getEnclosedElements()) {
+            if(enclosed.getKind() != ElementKind.FIELD) {
+                continue;
+            }
+            AnnotationMirror field = getAnnotation(enclosed, DATABASE_FIELD);
+            if(field == null) {
+                continue;
+            }
+            for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : field.getElementValues().entrySet()) {
+                String option = value.getKey().getSimpleName().toString();
+                Object optionValue = value.getValue().getValue();
+                if((option.equals("id") || option.equals("generatedId")) && Boolean.TRUE.equals(optionValue)) {
+                    return enclosed.getSimpleName().toString();
+                }
+                if(option.equals("generatedIdSequence") && !String.valueOf(optionValue).isEmpty()) {
+                    return enclosed.getSimpleName().toString();
+                }
+            }
+        }
+        return NO_ID;
+    }
+
+    private AnnotationMirror getAnnotation(Element element, String annotation) {
+        for(AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeMirror type = mirror.getAnnotationType();
+            if(type.toString().equals(annotation)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private void writeIndex(String resource, Map<String, String> entries) {
+        Filer filer = processingEnv.getFiler();
+        readOldIndex(filer, resource, entries);
+        if(entries.isEmpty()) {
+            return;
+        }
+
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", resource);
+            try (Writer writer = file.openWriter()) {
+                for(Map.Entry<String, String> entry : entries.entrySet()) {
+                    writer.write(entry.getValue().isEmpty() ? entry.getKey() : entry.getKey() + " " + entry.getValue());
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Can't write " + resource + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Keep entries from previous compilation, so index is complete when only some classes are compiled again
+     */
+    private void readOldIndex(Filer filer, String resource, Map<String, String> entries) {
+        try {
+            FileObject file = filer.getResource(StandardLocation.CLASS_OUTPUT, "", resource);
+            try (Reader reader = file.openReader(true); BufferedReader lines = new BufferedReader(reader)) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    line = line.trim();
+                    if(line.isEmpty()) {
+                        continue;
+                    }
+                    String[] data = line.split(" ", 2);
+                    // Class was removed or is compiled now
+                    if(compiled.contains(data[0]) || processingEnv.getElementUtils().getTypeElement(data[0].replace('$', '.')) == null) {
+                        continue;
+                    }
+                    entries.put(data[0], data.length > 1 ? data[1] : "");
+                }
+            }
+        } catch (IOException | IllegalArgumentException ignored) {
+            // There isn't old index
+        }
+    }
+}
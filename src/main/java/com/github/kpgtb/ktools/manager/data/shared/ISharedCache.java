@@ -0,0 +1,89 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.data.shared;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Cache shared by all servers in network. It stores values and sends messages between servers
+ * @since 2.4.9
+ */
+public interface ISharedCache extends AutoCloseable {
+    /**
+     * Get value from cache
+     * @param key Key of value
+     * @return Value or null
+     * @throws IOException when cache isn't available
+     */
+    @Nullable
+    byte[] get(String key) throws IOException;
+
+    /**
+     * Set value in cache
+     * @param key Key of value
+     * @param value Value
+     * @param expireMillis Time after which value is removed (0 -> never)
+     * @throws IOException when cache isn't available
+     */
+    void set(String key, byte[] value, long expireMillis) throws IOException;
+
+    /**
+     * Set value in cache only if key doesn't exist
+     * @param key Key of value
+     * @param value Value
+     * @param expireMillis Time after which value is removed (0 -> never)
+     * @return true if value was set
+     * @throws IOException when cache isn't available
+     */
+    boolean setIfAbsent(String key, byte[] value, long expireMillis) throws IOException;
+
+    /**
+     * Remove value from cache
+     * @param key Key of value
+     * @throws IOException when cache isn't available
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * Send message to all servers that listen on channel (also to this server)
+     * @param channel Name of channel
+     * @param message Message
+     * @throws IOException when cache isn't available
+     */
+    void publish(String channel, String message) throws IOException;
+
+    /**
+     * Listen for messages on channel. Listener is called in thread of cache
+     * @param channel Name of channel
+     * @param listener Action executed with every message
+     */
+    void subscribe(String channel, Consumer<String> listener);
+
+    /**
+     * Add action executed when connection for messages is opened again after it was lost.
+     * Messages sent in the meantime aren't received, so data from them should be removed.
+     * Action is called in thread of cache
+     * @param listener Action executed after reconnect
+     */
+    void addReconnectListener(Runnable listener);
+
+    @Override
+    void close();
+}
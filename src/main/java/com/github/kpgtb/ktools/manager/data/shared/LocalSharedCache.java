@@ -0,0 +1,127 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.data.shared;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Shared cache that works only inside this JVM. DataManager creates own instance when data.shared.type isn't redis,
+ * so it is shared only by users of the same instance (e.g. one server or tests).
+ * Expired values are removed when they are read and every {@value #SWEEP_EVERY} writes
+ * @since 2.4.9
+ */
+public class LocalSharedCache implements ISharedCache {
+    private static final int SWEEP_EVERY = 1000;
+
+    private final ConcurrentHashMap<String, Entry> values = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+    private final AtomicInteger writes = new AtomicInteger();
+
+    @Override
+    @Nullable
+    public byte[] get(String key) {
+        Entry entry = values.get(key);
+        if(entry == null) {
+            return null;
+        }
+        if(entry.expireAt != 0 && System.currentTimeMillis() >= entry.expireAt) {
+            values.remove(key, entry);
+            return null;
+        }
+        return entry.value.clone();
+    }
+
+    @Override
+    public void set(String key, byte[] value, long expireMillis) {
+        long expireAt = expireMillis > 0 ? System.currentTimeMillis() + expireMillis : 0L;
+        values.put(key, new Entry(value.clone(), expireAt));
+        if(writes.incrementAndGet() % SWEEP_EVERY == 0) {
+            sweep();
+        }
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, byte[] value, long expireMillis) {
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(value.clone(), expireMillis > 0 ? now + expireMillis : 0L);
+        boolean[] set = new boolean[1];
+        values.compute(key, (k, old) -> {
+            if(old != null && (old.expireAt == 0 || now < old.expireAt)) {
+                return old;
+            }
+            set[0] = true;
+            return entry;
+        });
+        return set[0];
+    }
+
+    /**
+     * Remove all expired values
+     */
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        values.values().removeIf(entry -> entry.expireAt != 0 && now >= entry.expireAt);
+    }
+
+    @Override
+    public void delete(String key) {
+        values.remove(key);
+    }
+
+    @Override
+    public void publish(String channel, String message) {
+        List<Consumer<String>> channelListeners = listeners.get(channel);
+        if(channelListeners == null) {
+            return;
+        }
+        for(Consumer<String> listener : channelListeners) {
+            listener.accept(message);
+        }
+    }
+
+    @Override
+    public void subscribe(String channel, Consumer<String> listener) {
+        listeners.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    @Override
+    public void addReconnectListener(Runnable listener) {
+        // Messages are sent in this JVM, so they are never lost
+    }
+
+    @Override
+    public void close() {
+        values.clear();
+        listeners.clear();
+    }
+
+    private static class Entry {
+        private final byte[] value;
+        private final long expireAt;
+
+        private Entry(byte[] value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
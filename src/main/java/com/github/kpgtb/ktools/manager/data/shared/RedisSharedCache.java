@@ -0,0 +1,430 @@
+/*
+ *    Copyright 2023 KPG-TB
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.kpgtb.ktools.manager.data.shared;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shared cache that uses Redis (or other server with Redis protocol, like KeyDB or Dragonfly).
+ * Commands use one connection. Messages are received by second connection in own thread, that reconnects when connection is lost.
+ * Connection for messages sends PING when nothing was received for {@value #PING_INTERVAL_MILLIS}ms, so broken connection is found
+ * @since 2.4.9
+ */
+public class RedisSharedCache implements ISharedCache {
+    private static final int TIMEOUT_MILLIS = 2000;
+    private static final long MAX_RECONNECT_DELAY = 30000L;
+    private static final int PING_INTERVAL_MILLIS = 30000;
+
+    private final String host;
+    private final int port;
+    private final @Nullable String password;
+    private final int database;
+    private final Logger logger;
+
+    private final Object commandLock = new Object();
+    private Connection commandConnection;
+
+    private final ConcurrentHashMap<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+    private final List<Runnable> reconnectListeners = new CopyOnWriteArrayList<>();
+    private volatile Connection subscribeConnection;
+    private Thread subscribeThread;
+    private volatile boolean closed;
+
+    /**
+     * Constructor of Redis cache. Connection is opened with first command
+     * @param host Host of Redis
+     * @param port Port of Redis
+     * @param password Password or null
+     * @param database Number of database
+     * @param logger Logger for errors of subscribe connection
+     */
+    public RedisSharedCache(String host, int port, @Nullable String password, int database, Logger logger) {
+        this.host = host;
+        this.port = port;
+        this.password = password == null || password.isEmpty() ? null : password;
+        this.database = database;
+        this.logger = logger;
+    }
+
+    @Override
+    @Nullable
+    public byte[] get(String key) throws IOException {
+        return (byte[]) command("GET", key);
+    }
+
+    @Override
+    public void set(String key, byte[] value, long expireMillis) throws IOException {
+        if(expireMillis > 0) {
+            command("SET", key, value, "PX", String.valueOf(expireMillis));
+        } else {
+            command("SET", key, value);
+        }
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, byte[] value, long expireMillis) throws IOException {
+        Object reply = expireMillis > 0
+                ? command("SET", key, value, "PX", String.valueOf(expireMillis), "NX")
+                : command("SET", key, value, "NX");
+        return reply != null;
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        command("DEL", key);
+    }
+
+    @Override
+    public void publish(String channel, String message) throws IOException {
+        command("PUBLISH", channel, message);
+    }
+
+    @Override
+    public void subscribe(String channel, Consumer<String> listener) {
+        boolean newChannel = !listeners.containsKey(channel);
+        listeners.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<>()).add(listener);
+
+        synchronized (this) {
+            if(subscribeThread == null) {
+                subscribeThread = new Thread(this::subscribeLoop, "KTools Redis Subscriber");
+                subscribeThread.setDaemon(true);
+                subscribeThread.start();
+                return;
+            }
+        }
+        Connection connection = subscribeConnection;
+        if(newChannel && connection != null) {
+            try {
+                connection.send("SUBSCRIBE", channel);
+            } catch (IOException e) {
+                // Channel is subscribed again after reconnect
+                connection.close();
+            }
+        }
+    }
+
+    @Override
+    public void addReconnectListener(Runnable listener) {
+        reconnectListeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (commandLock) {
+            if(commandConnection != null) {
+                commandConnection.close();
+                commandConnection = null;
+            }
+        }
+        Connection connection = subscribeConnection;
+        if(connection != null) {
+            connection.close();
+        }
+        synchronized (this) {
+            if(subscribeThread != null) {
+                subscribeThread.interrupt();
+            }
+        }
+    }
+
+    private Object command(Object... args) throws IOException {
+        if(closed) {
+            throw new IOException("Redis cache is closed");
+        }
+        synchronized (commandLock) {
+            // Second try with new connection, when old one was closed by server
+            for (int i = 0; ; i++) {
+                try {
+                    if(commandConnection == null) {
+                        commandConnection = open(TIMEOUT_MILLIS);
+                    }
+                    commandConnection.send(args);
+                    return commandConnection.read();
+                } catch (RedisException e) {
+                    throw e;
+                } catch (IOException e) {
+                    if(commandConnection != null) {
+                        commandConnection.close();
+                        commandConnection = null;
+                    }
+                    if(i > 0) {
+                        throw e;
+                    }
+                }
+            }
+        }
+    }
+
+    private Connection open(int readTimeout) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), TIMEOUT_MILLIS);
+            socket.setSoTimeout(readTimeout);
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            Connection connection = new Connection(socket);
+            if(password != null) {
+                connection.send("AUTH", password);
+                connection.read();
+            }
+            if(database != 0) {
+                connection.send("SELECT", String.valueOf(database));
+                connection.read();
+            }
+            return connection;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void subscribeLoop() {
+        long delay = 1000L;
+        boolean connectedBefore = false;
+        while (!closed) {
+            try {
+                Connection connection = open(PING_INTERVAL_MILLIS);
+                subscribeConnection = connection;
+                List<Object> channels = new ArrayList<>();
+                channels.add("SUBSCRIBE");
+                channels.addAll(listeners.keySet());
+                connection.send(channels.toArray());
+                delay = 1000L;
+
+                if(connectedBefore) {
+                    for(Runnable listener : reconnectListeners) {
+                        try {
+                            listener.run();
+                        } catch (RuntimeException e) {
+                            logger.log(Level.WARNING, "Error in reconnect listener of Redis", e);
+                        }
+                    }
+                }
+                connectedBefore = true;
+
+                boolean pingSent = false;
+                while (!closed) {
+                    Object reply = connection.readOrTimeout();
+                    if(reply == Connection.TIMEOUT) {
+                        if(pingSent) {
+                            throw new IOException("Redis didn't answer PING");
+                        }
+                        connection.send("PING");
+                        pingSent = true;
+                        continue;
+                    }
+                    pingSent = false;
+                    if(!(reply instanceof List)) {
+                        continue;
+                    }
+                    List<?> message = (List<?>) reply;
+                    if(message.size() < 3 || !"message".equals(toString(message.get(0)))) {
+                        continue;
+                    }
+                    List<Consumer<String>> channelListeners = listeners.get(toString(message.get(1)));
+                    if(channelListeners == null) {
+                        continue;
+                    }
+                    String payload = toString(message.get(2));
+                    for(Consumer<String> listener : channelListeners) {
+                        try {
+                            listener.accept(payload);
+                        } catch (RuntimeException e) {
+                            logger.log(Level.WARNING, "Error in listener of Redis channel", e);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                if(closed) {
+                    return;
+                }
+                logger.warning("Lost connection with Redis (" + e.getMessage() + "). Reconnecting in " + delay / 1000L + "s");
+            } finally {
+                Connection connection = subscribeConnection;
+                subscribeConnection = null;
+                if(connection != null) {
+                    connection.close();
+                }
+            }
+
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                return;
+            }
+            delay = Math.min(delay * 2, MAX_RECONNECT_DELAY);
+        }
+    }
+
+    private static String toString(Object value) {
+        return value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : String.valueOf(value);
+    }
+
+    /**
+     * Error returned by Redis. Connection can be still used
+     */
+    private static class RedisException extends IOException {
+        private RedisException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * One connection with Redis. It writes commands and reads replies in RESP format
+     */
+    private static class Connection {
+        private static final Object TIMEOUT = new Object();
+
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        private synchronized void send(Object... args) throws IOException {
+            writeHeader('*', args.length);
+            for(Object arg : args) {
+                byte[] bytes = arg instanceof byte[] ? (byte[]) arg : String.valueOf(arg).getBytes(StandardCharsets.UTF_8);
+                writeHeader('$', bytes.length);
+                out.write(bytes);
+                out.write('\r');
+                out.write('\n');
+            }
+            out.flush();
+        }
+
+        private void writeHeader(char type, int length) throws IOException {
+            out.write(type);
+            out.write(String.valueOf(length).getBytes(StandardCharsets.US_ASCII));
+            out.write('\r');
+            out.write('\n');
+        }
+
+        /**
+         * Read reply or return {@link #TIMEOUT} when nothing was received in read timeout of socket.
+         * Timeout in the middle of reply is thrown, because rest of reply can't be read
+         */
+        @Nullable
+        private Object readOrTimeout() throws IOException {
+            int type;
+            try {
+                type = in.read();
+            } catch (SocketTimeoutException e) {
+                return TIMEOUT;
+            }
+            return read(type);
+        }
+
+        @Nullable
+        private Object read() throws IOException {
+            return read(in.read());
+        }
+
+        @Nullable
+        private Object read(int type) throws IOException {
+            if(type == -1) {
+                throw new EOFException("Connection closed by Redis");
+            }
+            String line = readLine();
+            switch (type) {
+                case '+':
+                    return line;
+                case '-':
+                    throw new RedisException(line);
+                case ':':
+                    return Long.parseLong(line);
+                case '$': {
+                    int length = Integer.parseInt(line);
+                    if(length < 0) {
+                        return null;
+                    }
+                    byte[] bytes = new byte[length];
+                    int read = 0;
+                    while (read < length) {
+                        int count = in.read(bytes, read, length - read);
+                        if(count == -1) {
+                            throw new EOFException("Connection closed by Redis");
+                        }
+                        read += count;
+                    }
+                    readLine();
+                    return bytes;
+                }
+                case '*': {
+                    int length = Integer.parseInt(line);
+                    if(length < 0) {
+                        return null;
+                    }
+                    List<Object> values = new ArrayList<>(length);
+                    for (int i = 0; i < length; i++) {
+                        values.add(read());
+                    }
+                    return values;
+                }
+                default:
+                    throw new IOException("Unknown reply from Redis: " + (char) type);
+            }
+        }
+
+        private String readLine() throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != '\r') {
+                if(b == -1) {
+                    throw new EOFException("Connection closed by Redis");
+                }
+                line.write(b);
+            }
+            if(in.read() != '\n') {
+                throw new IOException("Wrong reply from Redis");
+            }
+            return new String(line.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+
+            }
+        }
+    }
+}
@@ -40,8 +40,13 @@ import java.util.UUID;
  * UIManager handles custom UIs on server
  */
 public class UiManager {
+    // Client hides action bar after 60 ticks, so the same action bar is sent again before
+    private static final int RESEND_TICKS = 40;
+
     private final HashMap<UUID, ArrayList<BaseUiObject>> ui;
     private final HashMap<UUID, ArrayList<String>> standardActionBars;
+    private final HashMap<UUID, SentActionBar> sentActionBars;
+    private long ticks;
 
     @Getter
     private boolean sending;
@@ -61,6 +66,7 @@ public class UiManager {
         this.plugin = plugin;
         this.ui = new HashMap<>();
         this.standardActionBars = new HashMap<>();
+        this.sentActionBars = new HashMap<>();
         this.sending = false;
         this.required = false;
         this.protocolManager = protocolManager;
@@ -82,9 +88,11 @@ public class UiManager {
     private void runActionBar() {
         stopActionBar();
         packet = new PacketSendingListener(plugin,this,protocolManager);
+        sentActionBars.clear();
         task = new BukkitRunnable() {
             @Override
             public void run() {
+                ticks += 5;
                 for(Player player : Bukkit.getOnlinePlayers()) {
                     Component component = Component.text("");
 
@@ -105,11 +113,21 @@ public class UiManager {
                         component.append(obj.getComponentToShow());
                     }
 
-                    if(!plugin.getToolsObjectWrapper().getLanguageManager().convertComponentToString(component).isEmpty()) {
-                        sending = true;
-                        plugin.getToolsObjectWrapper().getAdventure().player(player).sendActionBar(component);
-                        sending = false;
+                    // Send only changed action bar or when old one is hiding
+                    SentActionBar last = sentActionBars.get(player.getUniqueId());
+                    if(last != null && last.component.equals(component)) {
+                        if(last.empty || ticks - last.tick < RESEND_TICKS) {
+                            continue;
+                        }
+                    } else if(plugin.getToolsObjectWrapper().getLanguageManager().convertComponentToString(component).isEmpty()) {
+                        sentActionBars.put(player.getUniqueId(), new SentActionBar(component, ticks, true));
+                        continue;
                     }
+
+                    sending = true;
+                    plugin.getToolsObjectWrapper().getAdventure().player(player).sendActionBar(component);
+                    sending = false;
+                    sentActionBars.put(player.getUniqueId(), new SentActionBar(component, ticks, false));
                 }
             }
         }.runTaskTimer(plugin, 5,5);
@@ -214,9 +232,25 @@ public class UiManager {
 
     public void removeAllUI(UUID uuid) {
         ui.remove(uuid);
+        sentActionBars.remove(uuid);
     }
 
     public void removeAllActionBars(UUID uuid) {
         standardActionBars.remove(uuid);
     }
+
+    /**
+     * Last action bar sent to player
+     */
+    private static class SentActionBar {
+        private final Component component;
+        private final long tick;
+        private final boolean empty;
+
+        private SentActionBar(Component component, long tick, boolean empty) {
+            this.component = component;
+            this.tick = tick;
+            this.empty = empty;
+        }
+    }
 }
@@ -38,7 +38,7 @@ public class CollectionUtil {
                     break;
                 }
 
-                obj = collection.toArray()[0];
+                obj = collection.iterator().next();
                 result.append(NEXT_IDENTIFIER);
                 continue;
             }
@@ -49,8 +49,9 @@ public class CollectionUtil {
                     break;
                 }
 
-                String key = map.keySet().toArray()[0].getClass().getName();
-                obj = map.values().toArray()[0];
+                Map.Entry<?,?> entry = map.entrySet().iterator().next();
+                String key = entry.getKey().getClass().getName();
+                obj = entry.getValue();
 
                 result.append(NEXT_IDENTIFIER)
                     .append(key)
@@ -64,6 +65,13 @@ public class CollectionUtil {
         return result.toString();
     }
 
+    /**
+     * Get types from string created by {@link #getObjectTypes(Object)}. Result isn't cached here, because static cache would keep
+     * classes of other plugins after they are disabled. Persisters cache results until DataManager is closed
+     * @param s Types as string
+     * @return Array with type (or key type and value type of map)
+     * @throws ClassNotFoundException when one of classes doesn't exist
+     */
     public static Type[] getTypesFromString(String s) throws ClassNotFoundException {
         return getTypesFromString(s.split(NEXT_IDENTIFIER), 0);
     }
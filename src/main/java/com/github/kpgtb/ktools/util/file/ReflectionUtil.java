@@ -16,9 +16,17 @@
 
 package com.github.kpgtb.ktools.util.file;
 
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -34,6 +42,18 @@ public class ReflectionUtil {
      * @return Set of classes in package
      */
     public static Set<Class<?>> getAllClassesInPackage(File jarFile, String packageName) {
+        return getAllClassesInPackage(jarFile, packageName, true);
+    }
+
+    /**
+     * This method returns all classes in specified package
+     * @param jarFile JarFile in which is this plugin
+     * @param packageName Name of package that have this classes
+     * @param initialize false if static blocks of classes shouldn't be executed now
+     * @return Set of classes in package
+     * @since 2.4.9
+     */
+    public static Set<Class<?>> getAllClassesInPackage(File jarFile, String packageName, boolean initialize) {
         Set<Class<?>> classes = new HashSet<>();
         try {
             JarFile file = new JarFile(jarFile);
@@ -41,7 +61,7 @@ public class ReflectionUtil {
                 JarEntry jarEntry = entry.nextElement();
                 String name = jarEntry.getName().replace("/", ".");
                 if(name.startsWith(packageName) && name.endsWith(".class"))
-                    classes.add(Class.forName(name.substring(0, name.length() - 6)));
+                    classes.add(Class.forName(name.substring(0, name.length() - 6), initialize, ReflectionUtil.class.getClassLoader()));
             }
             file.close();
         } catch(Exception e) {
@@ -50,6 +70,54 @@ public class ReflectionUtil {
         return classes;
     }
 
+    /**
+     * This method reads index file from JAR. Every line of index starts with class name, then there can be data after space
+     * @param jarFile JarFile in which is this plugin
+     * @param indexName Path of index in JAR
+     * @return Map with class names and data from index (empty string if line doesn't have data) or null if there isn't index
+     * @since 2.4.9
+     */
+    @Nullable
+    public static Map<String, String> readIndex(File jarFile, String indexName) {
+        try (JarFile file = new JarFile(jarFile)) {
+            JarEntry entry = file.getJarEntry(indexName);
+            if(entry == null) {
+                return null;
+            }
+            Map<String, String> result = new LinkedHashMap<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream(entry), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if(line.isEmpty()) {
+                        continue;
+                    }
+                    String[] data = line.split(" ", 2);
+                    result.put(data[0], data.length > 1 ? data[1] : "");
+                }
+            }
+            return result;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * This method loads class without executing its static blocks
+     * @param name Binary name of class
+     * @return Class or null if it doesn't exist
+     * @since 2.4.9
+     */
+    @Nullable
+    public static Class<?> loadClass(String name) {
+        try {
+            return Class.forName(name, false, ReflectionUtil.class.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
     /**
      * This method returns all classes that extends specified class in specified package
      * @param jarfile JarFile in which is this plugin